@@ -1,14 +1,11 @@
 package com.notifly.api.config;
 
 import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
  * Custom Prometheus metrics for Notifly.
  *
@@ -19,14 +16,15 @@ import java.util.concurrent.atomic.AtomicLong;
  *  - notifications_dlq_total
  *  - provider_latency_seconds{channel, provider}
  *
+ * FIXED: notifications_dlq_current was backed by a static DLQ_COUNT that
+ * nothing ever updated, so it always read 0. It is now refreshed from
+ * failed_notifications by BacklogMetrics, next to the outbox backlog gauges.
+ *
  * Access via: GET /actuator/prometheus
  */
 @Configuration
 public class MetricsConfig {
 
-    // Shared atomic for DLQ gauge
-    public static final AtomicLong DLQ_COUNT = new AtomicLong(0);
-
     @Bean
     public Counter emailSentCounter(MeterRegistry registry) {
         return Counter.builder("notifications_sent_total")
@@ -76,13 +74,6 @@ public class MetricsConfig {
                 .register(registry);
     }
 
-    @Bean
-    public Gauge dlqGauge(MeterRegistry registry) {
-        return Gauge.builder("notifications_dlq_current", DLQ_COUNT, AtomicLong::get)
-                .description("Current DLQ size")
-                .register(registry);
-    }
-
     @Bean
     public Timer emailProviderLatency(MeterRegistry registry) {
         return Timer.builder("provider_latency_seconds")
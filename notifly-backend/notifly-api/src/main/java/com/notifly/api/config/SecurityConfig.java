@@ -102,6 +102,7 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                 .requestMatchers("/api/v1/admin/**").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.POST, "/api/v1/notifications").hasAnyRole("ADMIN", "SERVICE")
+                .requestMatchers(HttpMethod.POST, "/api/v1/notifications/batch").hasAnyRole("ADMIN", "SERVICE")
                 .requestMatchers(HttpMethod.GET,  "/api/v1/notifications/**").hasAnyRole("ADMIN", "SERVICE")
                 // INF-001: No actuator rules here — actuator is on port 9091, not 8080.
                 // Any request that somehow reaches /actuator on port 8080 is blocked
@@ -2,10 +2,13 @@ package com.notifly.api.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notifly.api.service.ApiKeyService;
+import com.notifly.api.service.ConfigChangePublisher;
+import com.notifly.api.service.QuotaService;
 import com.notifly.common.config.KafkaTopics;
 import com.notifly.common.context.TenantContext;
 import com.notifly.common.domain.entity.ApiKey;
 import com.notifly.common.domain.entity.NotificationTemplate;
+import com.notifly.common.domain.entity.SuppressedRecipient;
 import com.notifly.common.domain.repository.*;
 import com.notifly.common.dto.KafkaNotificationEvent;
 import com.notifly.common.exception.ValidationException;
@@ -18,6 +21,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -38,6 +42,10 @@ public class AdminController {
     private final NotificationTemplateRepository templateRepository;
     private final ApiKeyRepository apiKeyRepository;
     private final ApiKeyService apiKeyService;
+    private final ConfigChangePublisher configChangePublisher;
+    private final QuotaService quotaService;
+    private final SuppressedRecipientRepository suppressedRecipientRepository;
+    private final RedisTemplate<String, String> redisTemplate;
     // ADDED: required for BUG-005 fix — re-publishing DLQ entries to Kafka
     private final KafkaTemplate<String, String> kafkaTemplate;
     private final ObjectMapper objectMapper;
@@ -48,6 +56,7 @@ public class AdminController {
      * BUG-003 FIX: timeSeries was always List.of() - chart was permanently blank.
      *              Now calls getDailyStats() and respects the period param.
      * BUG-004 FIX: failureRate was never added to the metrics map - always 0 on frontend.
+     * ADDED: "usage" — requests admitted this month against the plan's monthly limit.
      */
     @GetMapping("/metrics")
     public ResponseEntity<Map<String, Object>> getMetrics(
@@ -99,6 +108,16 @@ public class AdminController {
         metrics.put("failureRate",          failureRate);
         metrics.put("channelMetrics",       Map.of("email", emailStats, "sms", smsStats, "push", pushStats));
 
+        QuotaService.Usage usage = quotaService.usageFor(tenantId);
+        Map<String, Object> usageMap = new LinkedHashMap<>();
+        usageMap.put("period",       usage.period().toString());
+        usageMap.put("plan",         usage.limits().plan());
+        usageMap.put("used",         usage.used());
+        usageMap.put("monthlyLimit", usage.limits().unlimited() ? null : usage.limits().monthlyRequestLimit());
+        usageMap.put("remaining",    usage.limits().unlimited() ? null
+                : Math.max(0L, usage.limits().monthlyRequestLimit() - usage.used()));
+        metrics.put("usage",                usageMap);
+
         // BUG-003 FIX: real time-series from DB instead of always-empty List.of()
         List<Map<String, Object>> timeSeries = logRepository.getDailyStats(tenantId, days)
                 .stream()
@@ -350,6 +369,57 @@ public class AdminController {
         return ResponseEntity.noContent().build();
     }
 
+    // ── Suppression list ──────────────────────────────────────────────────────
+
+    /**
+     * ADDED: Recipients the worker stopped sending to after the provider
+     * rejected them (unregistered device token, invalid/unsubscribed number,
+     * bounced email). Newest first; optionally one channel.
+     */
+    @GetMapping("/suppressions")
+    public ResponseEntity<Map<String, Object>> getSuppressions(
+            @RequestParam(required = false) String channel,
+            @RequestParam(defaultValue = "0")  int page,
+            @RequestParam(defaultValue = "20") int size) {
+
+        UUID tenantId = TenantContext.getTenantId();
+        var pageable  = PageRequest.of(page, size);
+        var entries   = channel == null || channel.isBlank()
+                ? suppressedRecipientRepository.findByTenantIdOrderByCreatedAtDesc(tenantId, pageable)
+                : suppressedRecipientRepository.findByTenantIdAndChannelOrderByCreatedAtDesc(
+                        tenantId, channel.toUpperCase(Locale.ROOT), pageable);
+
+        return ResponseEntity.ok(Map.of(
+                "data",  entries.getContent(),
+                "total", entries.getTotalElements(),
+                "page",  page,
+                "size",  size
+        ));
+    }
+
+    /**
+     * ADDED: Clear a suppression so the recipient is tried again.
+     *
+     * Removed from Redis first — that is what the workers consult. If the
+     * database delete then fails, the worker's periodic rebuild puts the
+     * Redis member back, so the two never disagree for long. Workers'
+     * in-memory filters may still hit on the entry until their next rebuild;
+     * the Redis check then lets the send through.
+     */
+    @DeleteMapping("/suppressions/{id}")
+    public ResponseEntity<Void> clearSuppression(@PathVariable UUID id) {
+        UUID tenantId = TenantContext.getTenantId();
+        SuppressedRecipient entry = suppressedRecipientRepository.findByIdAndTenantId(id, tenantId)
+                .orElseThrow(() -> new ValidationException("Suppression entry not found: " + id));
+
+        redisTemplate.opsForSet().remove(
+                SuppressedRecipient.redisKey(tenantId, entry.getChannel()), entry.getRecipient());
+        suppressedRecipientRepository.delete(entry);
+
+        log.info("Suppression cleared: id={}, channel={}, tenantId={}", id, entry.getChannel(), tenantId);
+        return ResponseEntity.noContent().build();
+    }
+
     // ── API Keys ──────────────────────────────────────────────────────────────
 
     @GetMapping("/api-keys")
@@ -447,6 +517,7 @@ public class AdminController {
                 .build();
 
         NotificationTemplate saved = templateRepository.save(template);
+        configChangePublisher.templateChanged(tenantId, saved.getChannel());
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("id",        saved.getId());
@@ -478,6 +549,7 @@ public class AdminController {
         if (request.getActive()  != null) template.setIsActive(request.getActive());
 
         NotificationTemplate saved = templateRepository.save(template);
+        configChangePublisher.templateChanged(tenantId, saved.getChannel());
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("id",        saved.getId());
@@ -285,15 +285,14 @@ public class AuthController {
     public ResponseEntity<Map<String, String>> refresh(@Valid @RequestBody RefreshRequest request) {
         String token = request.getRefreshToken();
 
-        if (!jwtUtil.validateToken(token)) {
-            throw new AuthenticationException("Invalid or expired refresh token");
-        }
-        if (!"refresh".equals(jwtUtil.getTokenType(token))) {
+        JwtUtil.JwtClaims claims = jwtUtil.verify(token)
+                .orElseThrow(() -> new AuthenticationException("Invalid or expired refresh token"));
+        if (!claims.isRefreshToken()) {
             throw new AuthenticationException("Token is not a refresh token");
         }
 
-        String userId   = jwtUtil.getUserIdFromToken(token);
-        String tenantId = jwtUtil.getTenantIdFromToken(token);
+        String userId   = claims.userId();
+        String tenantId = claims.tenantId();
 
         String stored = redisTemplate.opsForValue().get(REFRESH_PREFIX + userId);
         if (!token.equals(stored)) {
@@ -324,10 +323,8 @@ public class AuthController {
     public ResponseEntity<Map<String, String>> logout(
             @RequestBody(required = false) RefreshRequest request) {
         if (request != null && request.getRefreshToken() != null) {
-            try {
-                String userId = jwtUtil.getUserIdFromToken(request.getRefreshToken());
-                redisTemplate.delete(REFRESH_PREFIX + userId);
-            } catch (Exception ignored) {}
+            jwtUtil.verify(request.getRefreshToken())
+                    .ifPresent(claims -> redisTemplate.delete(REFRESH_PREFIX + claims.userId()));
         }
         return ResponseEntity.ok(Map.of("message", "Logged out successfully"));
     }
@@ -1,14 +1,23 @@
 package com.notifly.api.controller;
 
+import com.notifly.api.service.AdmissionService;
+import com.notifly.api.service.BatchNotificationService;
 import com.notifly.api.service.NotificationService;
-import com.notifly.api.service.RateLimiterService;
+import com.notifly.api.service.QuotaService;
+import com.notifly.common.dto.BatchNotificationRequestDTO;
+import com.notifly.common.dto.BatchNotificationResponseDTO;
 import com.notifly.common.dto.NotificationRequestDTO;
 import com.notifly.common.dto.NotificationResponseDTO;
+import com.notifly.common.enums.NotificationStatus;
 import com.notifly.common.exception.ValidationException;
+import com.notifly.common.metrics.PipelineStage;
+import com.notifly.common.metrics.StageTimers;
 import com.notifly.common.util.CorrelationIdUtil;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -25,6 +34,12 @@ import java.util.UUID;
  *  - Service call now matches updated NotificationService signature
  *  - Rate limit call uses UUID tenantId correctly
  *  - tenantId is extracted from Authentication principal (set by JWT/ApiKey filters)
+ *  - Rate limit, monthly quota and Idempotency-Key are checked together by
+ *    AdmissionService in one Redis call; an admission is released again if
+ *    the request then fails to persist
+ *
+ * Accepted single submissions are timed as the api_accept stage of
+ * notification_stage_seconds (controller entry to response; filters excluded).
  *
  * BUG-007 FIX: getStatus() now validates requestId is a well-formed UUID before
  * calling the service. Previously UUID.fromString() inside the service threw
@@ -38,7 +53,13 @@ import java.util.UUID;
 public class NotificationController {
 
     private final NotificationService notificationService;
-    private final RateLimiterService rateLimiterService;
+    private final BatchNotificationService batchNotificationService;
+    private final AdmissionService admissionService;
+    private final QuotaService quotaService;
+    private final StageTimers stageTimers;
+
+    @Value("${notifly.batch.max-items:5000}")
+    private int maxBatchItems;
 
     /**
      * POST /api/v1/notifications
@@ -51,6 +72,7 @@ public class NotificationController {
             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             Authentication authentication) {
 
+        long acceptStart = System.nanoTime();
         String correlationId = CorrelationIdUtil.generateNewCorrelationId();
         // Principal = tenantId string, set by JwtAuthFilter or ApiKeyAuthFilter
         String tenantId = (String) authentication.getPrincipal();
@@ -68,14 +90,91 @@ public class NotificationController {
             throw new ValidationException("recipient object is required");
         }
 
-        // Rate limit per tenant
-        rateLimiterService.checkRateLimit(UUID.fromString(tenantId), getApiKeyId(authentication));
+        if (idempotencyKey != null && idempotencyKey.isBlank()) {
+            idempotencyKey = null;
+        }
+        NotificationService.Prepared prepared = notificationService.prepare(request);
+
+        // Rate limit, monthly quota and idempotency — one Redis round trip
+        AdmissionService.Admission admission = admissionService.admit(
+                UUID.fromString(tenantId), getApiKeyId(authentication), 1,
+                idempotencyKey, prepared.requestId().toString(), prepared.payloadHash());
+
+        if (admission.isDuplicate()) {
+            log.info("[{}] Idempotent request for key: {}", correlationId, idempotencyKey);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(NotificationResponseDTO.builder()
+                    .requestId(admission.duplicateOfRequestId())
+                    .status(NotificationStatus.ACCEPTED.name())
+                    .message("Request accepted (duplicate)")
+                    .correlationId(correlationId)
+                    .build());
+        }
 
-        NotificationResponseDTO response = notificationService.submitNotification(
-                tenantId, request, idempotencyKey, correlationId);
+        NotificationResponseDTO response;
+        try {
+            response = notificationService.submitNotification(
+                    tenantId, request, prepared, idempotencyKey, correlationId);
+        } catch (DataIntegrityViolationException e) {
+            // Already stored — Redis lost the key, or the request_id was replayed
+            admissionService.release(admission);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(notificationService.resolveDuplicate(
+                    tenantId, prepared, idempotencyKey, correlationId, e));
+        } catch (RuntimeException e) {
+            admissionService.release(admission);
+            throw e;
+        }
 
         log.info("[{}] Notification {} accepted for tenant: {}",
                 correlationId, response.getRequestId(), tenantId);
+        stageTimers.recordSince(PipelineStage.API_ACCEPT, request.getChannels().get(0),
+                quotaService.limitsFor(admission.tenantId()).plan(), acceptStart);
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    /**
+     * POST /api/v1/notifications/batch
+     * Accepts up to notifly.batch.max-items notifications in one call.
+     * Returns 202 ACCEPTED with a per-item ACCEPTED / DUPLICATE / REJECTED result.
+     *
+     * The rate limit and monthly quota are charged one permit per item,
+     * all-or-nothing, so a batch counts against the tenant's limits exactly
+     * like the same number of single submissions. Quota for items that end up
+     * DUPLICATE or REJECTED is given back.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BatchNotificationResponseDTO> submitBatch(
+            @RequestBody BatchNotificationRequestDTO request,
+            Authentication authentication) {
+
+        String correlationId = CorrelationIdUtil.generateNewCorrelationId();
+        String tenantId = (String) authentication.getPrincipal();
+
+        if (request.getNotifications() == null || request.getNotifications().isEmpty()) {
+            throw new ValidationException("notifications array is required and must not be empty");
+        }
+        int size = request.getNotifications().size();
+        if (size > maxBatchItems) {
+            throw new ValidationException("A batch may contain at most " + maxBatchItems + " notifications");
+        }
+
+        log.info("[{}] Batch of {} notifications from tenant: {}", correlationId, size, tenantId);
+
+        // Per-item keys are checked in Postgres by BatchNotificationService
+        AdmissionService.Admission admission = admissionService.admit(
+                UUID.fromString(tenantId), getApiKeyId(authentication), size, null, null, null);
+
+        BatchNotificationResponseDTO response;
+        try {
+            response = batchNotificationService.submitBatch(tenantId, request.getNotifications(), correlationId);
+        } catch (RuntimeException e) {
+            admissionService.release(admission);
+            throw e;
+        }
+        admissionService.refundQuota(admission, size - response.getAccepted());
+
+        log.info("[{}] Batch for tenant {}: accepted={}, duplicates={}, rejected={}",
+                correlationId, tenantId, response.getAccepted(), response.getDuplicates(), response.getRejected());
 
         return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
     }
@@ -1,6 +1,7 @@
 package com.notifly.api.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notifly.api.service.ConfigChangePublisher;
 import com.notifly.common.context.TenantContext;
 import com.notifly.common.domain.repository.EventChannelPolicyRepository;
 import com.notifly.common.domain.repository.RateLimitConfigRepository;
@@ -54,6 +55,7 @@ public class SettingsController {
     private final EventChannelPolicyRepository channelPolicyRepository;
     private final RateLimitConfigRepository rateLimitConfigRepository;
     private final ObjectMapper objectMapper;
+    private final ConfigChangePublisher configChangePublisher;
 
     private static final Duration SETTINGS_TTL   = Duration.ofDays(30);
     private static final Set<String> VALID_CHANNELS = Set.of("EMAIL", "SMS", "PUSH");
@@ -180,6 +182,8 @@ public class SettingsController {
                 }
             );
 
+        configChangePublisher.channelPolicyChanged(tenantId, request.getEventType());
+
         Map<String, Object> response = Map.of(
             "eventType",     request.getEventType(),
             "fallbackOrder", request.getFallbackOrder(),
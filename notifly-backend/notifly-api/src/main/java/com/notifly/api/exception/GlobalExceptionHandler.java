@@ -6,6 +6,7 @@ import com.notifly.common.error.StandardErrorCode;
 import com.notifly.common.exception.AuthenticationException;
 import com.notifly.common.exception.IdempotencyException;
 import com.notifly.common.exception.NotiflyException;
+import com.notifly.common.exception.QuotaExceededException;
 import com.notifly.common.exception.RateLimitException;
 import com.notifly.common.exception.TenantException;
 import com.notifly.common.exception.ValidationException;
@@ -35,6 +36,19 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
                         ex.getMessage(), correlationId, request.getRequestURI()));
     }
 
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<ErrorResponse> handleQuotaExceededException(
+            QuotaExceededException ex, HttpServletRequest request) {
+        String correlationId = CorrelationIdContext.getCorrelationId();
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ErrorResponse.of(
+                        HttpStatus.TOO_MANY_REQUESTS.value(),
+                        StandardErrorCode.QUOTA_EXCEEDED.getCode(),
+                        ex.getMessage(), correlationId, request.getRequestURI()));
+    }
+
     @ExceptionHandler(IdempotencyException.class)
     public ResponseEntity<ErrorResponse> handleIdempotencyException(
             IdempotencyException ex, HttpServletRequest request) {
@@ -30,6 +30,7 @@ public class ApiKeyAuthFilter extends OncePerRequestFilter {
 
     private final ApiKeyRepository apiKeyRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApiKeyVerificationCache verificationCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -55,6 +56,13 @@ public class ApiKeyAuthFilter extends OncePerRequestFilter {
             return;
         }
 
+        // Fast path: this exact key already passed BCrypt on this node recently.
+        Optional<ApiKeyVerificationCache.VerifiedApiKey> cached = verificationCache.get(rawKey);
+        if (cached.isPresent()) {
+            setAuthentication(cached.get().toApiKey());
+            return;
+        }
+
         String keyPrefix = rawKey.substring(0, KEY_PREFIX_LENGTH);
         Optional<ApiKey> apiKeyOpt = apiKeyRepository.findValidByKeyPrefix(keyPrefix);
 
@@ -70,6 +78,11 @@ public class ApiKeyAuthFilter extends OncePerRequestFilter {
             return;
         }
 
+        verificationCache.put(rawKey, apiKey);
+        setAuthentication(apiKey);
+    }
+
+    private void setAuthentication(ApiKey apiKey) {
         // role is now a plain String ("ADMIN" or "SERVICE") — no .name() needed
         String roleValue = apiKey.getRole() != null ? apiKey.getRole().toUpperCase() : "SERVICE";
 
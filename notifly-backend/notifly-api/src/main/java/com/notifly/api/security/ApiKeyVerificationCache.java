@@ -0,0 +1,144 @@
+package com.notifly.api.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.notifly.common.config.RedisChannels;
+import com.notifly.common.domain.entity.ApiKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Node-local cache of API keys that already passed BCrypt verification.
+ *
+ * BCrypt at cost 12 costs tens of milliseconds of CPU per call, and the same
+ * service key authenticates every request it sends. After the first successful
+ * match we remember the key here so subsequent requests skip both the DB lookup
+ * and the hash comparison.
+ *
+ * Security notes:
+ *  - Entries are keyed by HMAC-SHA-256(server secret, raw key). The raw key is
+ *    never stored, and a heap dump of the cache does not allow offline guessing
+ *    without the server secret.
+ *  - Only successful verifications are cached; a failed match always goes back
+ *    to BCrypt, so the cache cannot be used to speed up brute forcing.
+ *  - Entries expire after a fixed TTL and the cache is size-bounded.
+ *  - Revocation is broadcast on {@link RedisChannels#API_KEY_REVOCATIONS};
+ *    every node evicts the key id on receipt. Revoked ids are also remembered
+ *    for one TTL so a verification that raced with the revocation cannot
+ *    re-populate the cache with a stale entry.
+ */
+@Slf4j
+@Component
+public class ApiKeyVerificationCache implements MessageListener {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    public record VerifiedApiKey(UUID keyId, UUID tenantId, String role, String keyPrefix, String displayName) {
+
+        /**
+         * Detached ApiKey carrying only what downstream code reads from the
+         * authentication credentials (id, tenant, role). Never persisted.
+         */
+        public ApiKey toApiKey() {
+            return ApiKey.builder()
+                    .id(keyId)
+                    .tenantId(tenantId)
+                    .role(role)
+                    .keyPrefix(keyPrefix)
+                    .displayName(displayName)
+                    .build();
+        }
+    }
+
+    private final Cache<String, VerifiedApiKey> verified;
+    private final Cache<UUID, Boolean> revokedTombstones;
+    private final SecretKeySpec hmacKey;
+    private final ThreadLocal<Mac> macs;
+
+    public ApiKeyVerificationCache(
+            RedisMessageListenerContainer listenerContainer,
+            @Value("${notifly.api-key.cache.secret:${notifly.jwt.secret}}") String secret,
+            @Value("${notifly.api-key.cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${notifly.api-key.cache.max-size:10000}") long maxSize) {
+
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.verified = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .build();
+        this.revokedTombstones = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .build();
+        this.hmacKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisChannels.API_KEY_REVOCATIONS));
+        log.info("API key verification cache enabled: ttl={}s, maxSize={}", ttlSeconds, maxSize);
+    }
+
+    public Optional<VerifiedApiKey> get(String rawKey) {
+        return Optional.ofNullable(verified.getIfPresent(digest(rawKey)));
+    }
+
+    public void put(String rawKey, ApiKey apiKey) {
+        if (revokedTombstones.getIfPresent(apiKey.getId()) != null) {
+            return;
+        }
+        verified.put(digest(rawKey), new VerifiedApiKey(
+                apiKey.getId(),
+                apiKey.getTenantId(),
+                apiKey.getRole(),
+                apiKey.getKeyPrefix(),
+                apiKey.getDisplayName()));
+    }
+
+    /**
+     * Evicts every cached entry for the given key id on this node.
+     * Cross-node eviction happens through the Redis revocation channel.
+     */
+    public void invalidate(UUID keyId) {
+        revokedTombstones.put(keyId, Boolean.TRUE);
+        verified.asMap().values().removeIf(v -> v.keyId().equals(keyId));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            invalidate(UUID.fromString(body.trim()));
+            log.debug("API key evicted from verification cache: keyId={}", body);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed API key revocation message: {}", body);
+        }
+    }
+
+    private String digest(String rawKey) {
+        byte[] mac = macs.get().doFinal(rawKey.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(mac);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA-256 not available", e);
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.notifly.api.security;
 
 import com.notifly.api.util.JwtUtil;
-import com.notifly.common.domain.entity.AdminUser;
-import com.notifly.common.domain.repository.AdminUserRepository;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -27,6 +25,14 @@ import java.util.UUID;
  * JWT authentication filter.
  * Validates Bearer tokens and populates the SecurityContext.
  * Sets principal = tenantId (UUID string) for downstream use.
+ *
+ * The token is verified once (JwtUtil.verify) and the user's active flag comes
+ * from UserStatusCache, so authenticating a dashboard request normally costs
+ * one HMAC check and no database query.
+ *
+ * FIXED: Only access tokens authenticate a request. A refresh token (longer
+ * lived, meant for POST /api/v1/auth/refresh only) used to be accepted as a
+ * bearer token too.
  */
 @Slf4j
 @Component
@@ -34,7 +40,7 @@ import java.util.UUID;
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
-    private final AdminUserRepository adminUserRepository;
+    private final UserStatusCache userStatusCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -44,16 +50,19 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         if (StringUtils.hasText(token)) {
             try {
-                if (jwtUtil.validateToken(token)) {
-                    String userId = jwtUtil.getUserIdFromToken(token);
-                    String tenantId = jwtUtil.getTenantIdFromToken(token);
-                    String role = jwtUtil.getRoleFromToken(token);
+                // One signature check; all claims come from the same parse
+                Optional<JwtUtil.JwtClaims> verified = jwtUtil.verify(token);
+                if (verified.isPresent() && !verified.get().isAccessToken()) {
+                    log.warn("JWT rejected: token_type={} is not an access token, userId={}",
+                            verified.get().tokenType(), verified.get().userId());
+                } else if (verified.isPresent()) {
+                    JwtUtil.JwtClaims claims = verified.get();
+                    String userId = claims.userId();
+                    String tenantId = claims.tenantId();
+                    String role = claims.role();
 
-                    // Verify user still active in DB
-                    Optional<AdminUser> userOpt = adminUserRepository.findByIdAndTenantId(
-                            UUID.fromString(userId), UUID.fromString(tenantId));
-
-                    if (userOpt.isPresent() && userOpt.get().isActive()) {
+                    // Verify user still active (cached, evicted on deactivation)
+                    if (userStatusCache.isActive(UUID.fromString(userId), UUID.fromString(tenantId))) {
                         List<SimpleGrantedAuthority> authorities = List.of(
                                 new SimpleGrantedAuthority("ROLE_" + role)
                         );
@@ -0,0 +1,97 @@
+package com.notifly.api.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.notifly.common.config.RedisChannels;
+import com.notifly.common.domain.repository.AdminUserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Node-local cache of "is this admin user still active?" for JwtAuthFilter.
+ *
+ * Every dashboard request re-checks the user behind its JWT so a deactivated
+ * account is locked out before its token expires. That check was a
+ * findByIdAndTenantId query per request; it is now answered from this cache
+ * and hits the database once per user per TTL.
+ *
+ * Staleness is bounded two ways:
+ *  - entries expire after notifly.jwt.user-status-cache.ttl-seconds (short);
+ *  - {@link #invalidate} evicts the user on every node through
+ *    {@link RedisChannels#USER_STATUS_CHANGES} — call it whenever a user is
+ *    deactivated, deleted or has their sessions revoked.
+ * Missing users are cached as inactive, so a deleted account cannot be used
+ * to hammer the database either.
+ */
+@Slf4j
+@Component
+public class UserStatusCache implements MessageListener {
+
+    private record UserKey(UUID userId, UUID tenantId) {}
+
+    private final AdminUserRepository adminUserRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Cache<UserKey, Boolean> active;
+
+    public UserStatusCache(
+            AdminUserRepository adminUserRepository,
+            RedisTemplate<String, String> redisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            @Value("${notifly.jwt.user-status-cache.ttl-seconds:30}") long ttlSeconds,
+            @Value("${notifly.jwt.user-status-cache.max-size:10000}") long maxSize) {
+        this.adminUserRepository = adminUserRepository;
+        this.redisTemplate = redisTemplate;
+        this.active = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisChannels.USER_STATUS_CHANGES));
+        log.info("User status cache enabled: ttl={}s, maxSize={}", ttlSeconds, maxSize);
+    }
+
+    public boolean isActive(UUID userId, UUID tenantId) {
+        return active.get(new UserKey(userId, tenantId), k ->
+                adminUserRepository.findByIdAndTenantId(k.userId(), k.tenantId())
+                        .map(u -> u.isActive())
+                        .orElse(false));
+    }
+
+    /**
+     * Evicts the user here and, via Redis pub/sub, on every other API node.
+     * Publishing is best-effort; the TTL covers a lost message.
+     */
+    public void invalidate(UUID userId) {
+        evictLocal(userId);
+        try {
+            redisTemplate.convertAndSend(RedisChannels.USER_STATUS_CHANGES, userId.toString());
+        } catch (Exception e) {
+            log.warn("Failed to publish user status change for userId={}: {}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            evictLocal(UUID.fromString(body.trim()));
+            log.debug("User evicted from status cache: userId={}", body);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed user status message: {}", body);
+        }
+    }
+
+    private void evictLocal(UUID userId) {
+        active.asMap().keySet().removeIf(k -> k.userId().equals(userId));
+    }
+}
@@ -0,0 +1,240 @@
+package com.notifly.api.service;
+
+import com.notifly.common.exception.IdempotencyException;
+import com.notifly.common.exception.QuotaExceededException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Single-round-trip admission for notification submissions.
+ *
+ * Admitting a notification used to mean a rate-limit script, an idempotency
+ * lookup in Postgres and (with quotas) a tenant read. Now one Lua script
+ * decides everything atomically:
+ *
+ *   1. Idempotency — if the Idempotency-Key is already reserved the request is
+ *      a DUPLICATE of the stored request id (nothing else is consumed); a
+ *      different payload hash is a conflict (409).
+ *   2. Monthly quota — used + permits must fit Tenant.monthlyRequestLimit
+ *      (ENTERPRISE is unlimited). "used" is the Redis counter
+ *      quota:{tenant}:{yyyy-MM} plus this node's unflushed usage; the script
+ *      only reads it — QuotaService counts admitted requests locally and
+ *      flushes them asynchronously.
+ *   3. Rate limit — GCRA lease for whatever the local bucket could not cover
+ *      (see RateLimiterService); skipped entirely when it covered everything.
+ *   4. Commit — only if all checks pass: advance the GCRA cells and SET the
+ *      idempotency key to "requestId|payloadHash".
+ *
+ * Tenant limits are cached in-process, so an admission costs at most one
+ * Redis call and no Postgres query. The unique indexes on notification_requests
+ * remain the backstop for keys older than notifly.admission.idempotency-ttl-hours.
+ *
+ * If the request fails after admission, callers {@link #release} it so the key
+ * can be retried and the quota is not charged.
+ */
+@Slf4j
+@Service
+public class AdmissionService {
+
+    /** A successful admission — or a duplicate of an earlier request. */
+    public record Admission(UUID tenantId, YearMonth period, int permits,
+                            String idempotencyRedisKey, String reservedValue,
+                            String duplicateOfRequestId) {
+        public boolean isDuplicate() {
+            return duplicateOfRequestId != null;
+        }
+    }
+
+    /**
+     * KEYS[1] = rate-limit hash, KEYS[2] = monthly quota counter, KEYS[3] = idempotency key
+     * ARGV[1..6]  = gcra_plan args (wanted — 0 skips the rate check —, minimum, cells)
+     * ARGV[7]     = permits charged against the quota
+     * ARGV[8]     = monthly limit (0 = unlimited)
+     * ARGV[9]     = this node's usage not yet flushed to KEYS[2]
+     * ARGV[10]    = "1" if an idempotency key was supplied
+     * ARGV[11]    = value to reserve: "requestId|payloadHash"
+     * ARGV[12]    = idempotency key TTL in ms
+     *
+     * Returns {decision, detail}:
+     *   {"ADMITTED", granted} | {"DUPLICATE", stored value} | {"QUOTA", used} | {"RATE", waitMs}
+     */
+    private static final String ADMISSION_LUA =
+        RateLimiterService.GCRA_FUNCTIONS +
+        "local t   = redis.call('TIME')\n" +
+        "local now = tonumber(t[1]) * 1000 + tonumber(t[2]) / 1000\n" +
+        "if ARGV[10] == '1' then\n" +
+        "  local existing = redis.call('GET', KEYS[3])\n" +
+        "  if existing then return {'DUPLICATE', existing} end\n" +
+        "end\n" +
+        "local permits = tonumber(ARGV[7])\n" +
+        "local limit   = tonumber(ARGV[8])\n" +
+        "if limit > 0 then\n" +
+        "  local used = tonumber(redis.call('GET', KEYS[2]) or '0') + tonumber(ARGV[9])\n" +
+        "  if used + permits > limit then return {'QUOTA', tostring(used)} end\n" +
+        "end\n" +
+        "local wanted = tonumber(ARGV[1])\n" +
+        "local grant, tats, cells = 0, nil, nil\n" +
+        "if wanted > 0 then\n" +
+        "  cells = { {'m', tonumber(ARGV[3]), tonumber(ARGV[4])},\n" +
+        "            {'h', tonumber(ARGV[5]), tonumber(ARGV[6])} }\n" +
+        "  local wait\n" +
+        "  grant, wait, tats = gcra_plan(KEYS[1], now, wanted, tonumber(ARGV[2]), cells)\n" +
+        "  if grant == 0 then return {'RATE', tostring(wait)} end\n" +
+        "  gcra_commit(KEYS[1], now, grant, tats, cells)\n" +
+        "end\n" +
+        "if ARGV[10] == '1' then\n" +
+        "  redis.call('SET', KEYS[3], ARGV[11], 'PX', ARGV[12])\n" +
+        "end\n" +
+        "return {'ADMITTED', tostring(grant)}";
+
+    /** Delete KEYS[1] only if it still holds ARGV[1] (our reservation). */
+    private static final String RELEASE_LUA =
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+        "  return redis.call('DEL', KEYS[1])\n" +
+        "end\n" +
+        "return 0";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RateLimiterService rateLimiterService;
+    private final QuotaService quotaService;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> admissionScript;
+    private final DefaultRedisScript<Long> releaseScript;
+    private final long idempotencyTtlMs;
+
+    public AdmissionService(
+            RedisTemplate<String, String> redisTemplate,
+            RateLimiterService rateLimiterService,
+            QuotaService quotaService,
+            @Value("${notifly.admission.idempotency-ttl-hours:24}") long idempotencyTtlHours) {
+        this.redisTemplate = redisTemplate;
+        this.rateLimiterService = rateLimiterService;
+        this.quotaService = quotaService;
+        this.idempotencyTtlMs = Duration.ofHours(idempotencyTtlHours).toMillis();
+
+        this.admissionScript = new DefaultRedisScript<>();
+        this.admissionScript.setScriptText(ADMISSION_LUA);
+        this.admissionScript.setResultType(List.class);
+
+        this.releaseScript = new DefaultRedisScript<>();
+        this.releaseScript.setScriptText(RELEASE_LUA);
+        this.releaseScript.setResultType(Long.class);
+    }
+
+    /**
+     * Admit {@code permits} notifications for a tenant.
+     *
+     * @param idempotencyKey optional; when set, {@code requestId} and
+     *                       {@code payloadHash} are reserved under it
+     * @throws com.notifly.common.exception.RateLimitException rate limit exceeded
+     * @throws QuotaExceededException monthly allowance used up
+     * @throws IdempotencyException key reused with a different payload
+     */
+    public Admission admit(UUID tenantId, String apiKeyId, int permits,
+                           String idempotencyKey, String requestId, String payloadHash) {
+        QuotaService.TenantLimits limits = quotaService.limitsFor(tenantId);
+        RateLimiterService.Reservation reservation = rateLimiterService.reserve(tenantId, apiKeyId, permits);
+
+        YearMonth month = QuotaService.currentPeriod();
+        String quotaKey = QuotaService.counterKey(tenantId, month);
+        String idemKey = "idempotency:" + tenantId + ":" + (idempotencyKey != null ? idempotencyKey : "");
+        boolean hasKey = idempotencyKey != null;
+
+        List<String> args = new ArrayList<>(reservation.scriptArgs());
+        args.add(String.valueOf(permits));
+        args.add(String.valueOf(limits.unlimited() ? 0 : limits.monthlyRequestLimit()));
+        args.add(String.valueOf(quotaService.unflushed(tenantId, month)));
+        args.add(hasKey ? "1" : "0");
+        args.add(hasKey ? requestId + "|" + payloadHash : "");
+        args.add(String.valueOf(idempotencyTtlMs));
+
+        List<?> result;
+        try {
+            result = redisTemplate.execute(admissionScript,
+                    List.of(reservation.key, quotaKey, idemKey), args.toArray());
+        } catch (RuntimeException e) {
+            rateLimiterService.refund(reservation);
+            throw e;
+        }
+
+        String decision = result != null && !result.isEmpty() ? String.valueOf(result.get(0)) : "";
+        String detail = result != null && result.size() > 1 ? String.valueOf(result.get(1)) : "0";
+
+        switch (decision) {
+            case "ADMITTED" -> {
+                rateLimiterService.settle(reservation, Long.parseLong(detail));
+                quotaService.record(tenantId, month, permits);
+                return new Admission(tenantId, month, permits,
+                        hasKey ? idemKey : null, hasKey ? requestId + "|" + payloadHash : null, null);
+            }
+            case "DUPLICATE" -> {
+                rateLimiterService.refund(reservation);
+                int sep = detail.indexOf('|');
+                if (sep < 0 || !detail.substring(sep + 1).equals(payloadHash)) {
+                    log.warn("Idempotency key reused with different payload for tenant {}", tenantId);
+                    throw new IdempotencyException(
+                            "Idempotency key already used with different payload. " +
+                            "Idempotency keys must be reused with identical payloads.");
+                }
+                return new Admission(tenantId, month, 0, null, null, detail.substring(0, sep));
+            }
+            case "QUOTA" -> {
+                rateLimiterService.refund(reservation);
+                long retryAfter = Math.max(1L, millisUntilEndOf(month) / 1000);
+                log.warn("Monthly quota exhausted for tenant={}: used={}, limit={}",
+                        tenantId, detail, limits.monthlyRequestLimit());
+                throw new QuotaExceededException(String.format(
+                        "Monthly request limit of %d reached for the %s plan.",
+                        limits.monthlyRequestLimit(), limits.plan()), retryAfter);
+            }
+            default -> {
+                rateLimiterService.refund(reservation);
+                throw rateLimiterService.exceeded(tenantId, reservation, Long.parseLong(detail));
+            }
+        }
+    }
+
+    /**
+     * Undo an admission whose request was not persisted: frees the
+     * idempotency key (only if it still holds our value) and returns the quota.
+     */
+    public void release(Admission admission) {
+        if (admission.isDuplicate()) {
+            return;
+        }
+        quotaService.record(admission.tenantId(), admission.period(), -admission.permits());
+        if (admission.idempotencyRedisKey() == null) {
+            return;
+        }
+        try {
+            redisTemplate.execute(releaseScript, List.of(admission.idempotencyRedisKey()),
+                    admission.reservedValue());
+        } catch (RuntimeException e) {
+            // The key expires on its own; until then retries are answered as duplicates
+            log.warn("Failed to release idempotency key for tenant {}: {}", admission.tenantId(), e.getMessage());
+        }
+    }
+
+    /** Return quota for {@code unused} permits — batch items that were not accepted. */
+    public void refundQuota(Admission admission, int unused) {
+        if (admission.isDuplicate() || unused <= 0) {
+            return;
+        }
+        quotaService.record(admission.tenantId(), admission.period(), -Math.min(unused, admission.permits()));
+    }
+
+    private static long millisUntilEndOf(YearMonth month) {
+        long end = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        return Math.max(0L, end - System.currentTimeMillis());
+    }
+}
@@ -1,13 +1,18 @@
 package com.notifly.api.service;
 
+import com.notifly.api.security.ApiKeyVerificationCache;
+import com.notifly.common.config.RedisChannels;
 import com.notifly.common.domain.entity.ApiKey;
 import com.notifly.common.domain.repository.ApiKeyRepository;
 import com.notifly.common.exception.ValidationException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.security.SecureRandom;
 import java.time.Instant;
@@ -26,6 +31,8 @@ public class ApiKeyService {
 
     private final ApiKeyRepository apiKeyRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApiKeyVerificationCache verificationCache;
+    private final RedisTemplate<String, String> redisTemplate;
 
     public record CreatedApiKey(ApiKey apiKey, String rawKey) {}
 
@@ -72,5 +79,28 @@ public class ApiKeyService {
         key.setRevoked(true);
         apiKeyRepository.save(key);
         log.info("API key revoked: keyId={}, tenantId={}", keyId, tenantId);
+
+        // Evict only after commit — a node that re-verifies in between must
+        // already see revoked=true in the DB, otherwise it would re-cache the key.
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                broadcastRevocation(keyId);
+            }
+        });
+    }
+
+    /**
+     * Evicts the key from this node's verification cache and tells every other
+     * API node to do the same. If Redis is unavailable the other nodes fall back
+     * to the cache TTL (notifly.api-key.cache.ttl-seconds).
+     */
+    private void broadcastRevocation(UUID keyId) {
+        verificationCache.invalidate(keyId);
+        try {
+            redisTemplate.convertAndSend(RedisChannels.API_KEY_REVOCATIONS, keyId.toString());
+        } catch (Exception e) {
+            log.warn("Failed to broadcast API key revocation: keyId={}, error={}", keyId, e.getMessage());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.notifly.api.service;
+
+import com.notifly.common.domain.repository.FailedNotificationRepository;
+import com.notifly.common.domain.repository.NotificationOutboxRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backlog gauges, refreshed every notifly.metrics.backlog-refresh-ms:
+ *
+ *  - notifly_outbox_pending               — notification_outbox rows not yet published
+ *  - notifly_outbox_oldest_pending_seconds — age of the oldest of them (0 when empty);
+ *    growth here means the relay/poller has stalled, long before users notice
+ *  - notifications_dlq_current            — rows in failed_notifications
+ *
+ * Gauges read the last refreshed value, so a Prometheus scrape never runs a
+ * query. All tenants together; every API instance reports the same values,
+ * so dashboards should take max() across instances.
+ */
+@Slf4j
+@Component
+public class BacklogMetrics {
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final FailedNotificationRepository failedNotificationRepository;
+
+    private final AtomicLong outboxPending = new AtomicLong();
+    private final AtomicLong dlqSize = new AtomicLong();
+    private volatile double oldestPendingSeconds;
+
+    public BacklogMetrics(NotificationOutboxRepository outboxRepository,
+                          FailedNotificationRepository failedNotificationRepository,
+                          MeterRegistry registry) {
+        this.outboxRepository = outboxRepository;
+        this.failedNotificationRepository = failedNotificationRepository;
+
+        Gauge.builder("notifly_outbox_pending", outboxPending, AtomicLong::get)
+                .description("Outbox rows waiting to be published")
+                .register(registry);
+        Gauge.builder("notifly_outbox_oldest_pending_seconds", this, m -> m.oldestPendingSeconds)
+                .description("Age of the oldest unpublished outbox row")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("notifications_dlq_current", dlqSize, AtomicLong::get)
+                .description("Current DLQ size")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${notifly.metrics.backlog-refresh-ms:15000}")
+    public void refresh() {
+        try {
+            outboxPending.set(outboxRepository.countPending());
+            oldestPendingSeconds = outboxRepository.oldestPendingAgeSeconds();
+            dlqSize.set(failedNotificationRepository.count());
+        } catch (RuntimeException e) {
+            log.warn("BacklogMetrics: Refresh failed, keeping previous values: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.notifly.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notifly.common.context.CorrelationIdContext;
+import com.notifly.common.domain.entity.NotificationRequest;
+import com.notifly.common.domain.repository.NotificationRequestRepository;
+import com.notifly.common.dto.BatchNotificationRequestDTO;
+import com.notifly.common.dto.BatchNotificationResponseDTO;
+import com.notifly.common.dto.BatchNotificationResponseDTO.ItemResult;
+import com.notifly.common.dto.BatchNotificationResponseDTO.ItemStatus;
+import com.notifly.common.dto.NotificationRequestDTO;
+import com.notifly.common.enums.NotificationPriority;
+import com.notifly.common.exception.ValidationException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bulk submission for POST /api/v1/notifications/batch.
+ *
+ * Per batch (instead of per notification):
+ *  - one idempotency query covering every request_id and Idempotency-Key;
+ *  - multi-row INSERT ... ON CONFLICT DO NOTHING RETURNING into
+ *    notification_requests (chunked to stay under the bind-parameter limit);
+ *  - multi-row INSERT into notification_outbox for the rows actually inserted;
+ * all in one transaction, so requests and outbox stay consistent as they do
+ * for the single endpoint.
+ *
+ * Every item gets its own result: ACCEPTED, DUPLICATE (already submitted —
+ * same semantics as the single endpoint's "accepted (duplicate)") or
+ * REJECTED (validation error, or an idempotency key reused with a different
+ * payload). A bad item never fails the rest of the batch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchNotificationService {
+
+    // 9 params per notification_requests row; PG allows 65535 per statement
+    private static final int INSERT_CHUNK_SIZE = 1000;
+
+    private final NotificationRequestRepository requestRepository;
+    private final NotificationService notificationService;
+    private final IdempotencyService idempotencyService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /** A validated item waiting to be written. */
+    private record PendingItem(int index, UUID requestId, String idempotencyKey,
+                               NotificationRequestDTO request, String payloadJson,
+                               String payloadHash, String eventJson) {}
+
+    @Transactional
+    public BatchNotificationResponseDTO submitBatch(
+            String tenantIdStr,
+            List<BatchNotificationRequestDTO.Item> items,
+            String correlationId) {
+
+        UUID tenantId = UUID.fromString(tenantIdStr);
+        CorrelationIdContext.setCorrelationId(correlationId);
+
+        ItemResult[] results = new ItemResult[items.size()];
+        List<PendingItem> pending = new ArrayList<>(items.size());
+        Set<UUID> seenRequestIds = new HashSet<>();
+        Set<String> seenKeys = new HashSet<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            BatchNotificationRequestDTO.Item item = items.get(i);
+            try {
+                PendingItem prepared = prepare(i, tenantId, item, correlationId);
+                // Repeats inside the same batch are duplicates of the first occurrence
+                if (!seenRequestIds.add(prepared.requestId())
+                        || (prepared.idempotencyKey() != null && !seenKeys.add(prepared.idempotencyKey()))) {
+                    results[i] = result(i, prepared.requestId().toString(), ItemStatus.DUPLICATE,
+                            "Duplicate of an earlier item in this batch");
+                    continue;
+                }
+                pending.add(prepared);
+            } catch (ValidationException e) {
+                results[i] = result(i, requestIdOf(item), ItemStatus.REJECTED, e.getMessage());
+            } catch (Exception e) {
+                log.warn("[{}] Batch item {} could not be prepared: {}", correlationId, i, e.getMessage());
+                results[i] = result(i, requestIdOf(item), ItemStatus.REJECTED, "Invalid notification");
+            }
+        }
+
+        List<PendingItem> toInsert = filterExisting(tenantId, pending, results);
+        Set<UUID> inserted = insertRequests(tenantId, toInsert);
+
+        List<PendingItem> outboxItems = new ArrayList<>(inserted.size());
+        for (PendingItem p : toInsert) {
+            if (inserted.contains(p.requestId())) {
+                outboxItems.add(p);
+                results[p.index()] = result(p.index(), p.requestId().toString(), ItemStatus.ACCEPTED,
+                        "Notification request accepted");
+            } else {
+                // Lost a race with a concurrent submission of the same request/key
+                results[p.index()] = result(p.index(), p.requestId().toString(), ItemStatus.DUPLICATE,
+                        "Request accepted (duplicate)");
+            }
+        }
+        insertOutbox(tenantId, outboxItems);
+
+        return summarize(correlationId, results);
+    }
+
+    private PendingItem prepare(int index, UUID tenantId, BatchNotificationRequestDTO.Item item,
+                                String correlationId) throws Exception {
+        NotificationRequestDTO request = item.getNotification();
+        if (request == null) {
+            throw new ValidationException("notification is required");
+        }
+        if (request.getEventType() == null || request.getEventType().isBlank()) {
+            throw new ValidationException("event_type is required");
+        }
+        if (request.getChannels() == null || request.getChannels().isEmpty()) {
+            throw new ValidationException("channels array is required and must not be empty");
+        }
+        String recipientAddress = notificationService.extractRecipientAddress(request);
+
+        UUID requestId;
+        try {
+            requestId = request.getRequestId() != null ? UUID.fromString(request.getRequestId()) : UUID.randomUUID();
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("request_id must be a valid UUID");
+        }
+
+        // Same serialization + hash as the single endpoint, so a key used there
+        // and here is recognised as the same request.
+        String payloadJson = objectMapper.writeValueAsString(request);
+        String payloadHash = idempotencyService.computePayloadHashFromJson(payloadJson);
+        String eventJson = objectMapper.writeValueAsString(
+                notificationService.buildKafkaEvent(tenantId, requestId, request, recipientAddress, correlationId));
+
+        String key = item.getIdempotencyKey() != null && !item.getIdempotencyKey().isBlank()
+                ? item.getIdempotencyKey() : null;
+        return new PendingItem(index, requestId, key, request, payloadJson, payloadHash, eventJson);
+    }
+
+    /**
+     * One query for the whole batch; items already submitted become DUPLICATE
+     * (or REJECTED when the idempotency key was used with a different payload).
+     */
+    private List<PendingItem> filterExisting(UUID tenantId, List<PendingItem> pending, ItemResult[] results) {
+        if (pending.isEmpty()) {
+            return pending;
+        }
+
+        List<UUID> requestIds = pending.stream().map(PendingItem::requestId).toList();
+        List<String> keys = pending.stream().map(PendingItem::idempotencyKey)
+                .filter(Objects::nonNull).toList();
+        List<NotificationRequest> existing = keys.isEmpty()
+                ? requestRepository.findByTenantIdAndRequestIdIn(tenantId, requestIds)
+                : requestRepository.findExistingForBatch(tenantId, requestIds, keys);
+        if (existing.isEmpty()) {
+            return pending;
+        }
+
+        Map<UUID, NotificationRequest> byRequestId = new HashMap<>();
+        Map<String, NotificationRequest> byKey = new HashMap<>();
+        for (NotificationRequest r : existing) {
+            byRequestId.put(r.getRequestId(), r);
+            if (r.getIdempotencyKey() != null) {
+                byKey.put(r.getIdempotencyKey(), r);
+            }
+        }
+
+        List<PendingItem> remaining = new ArrayList<>(pending.size());
+        for (PendingItem p : pending) {
+            NotificationRequest match = p.idempotencyKey() != null ? byKey.get(p.idempotencyKey()) : null;
+            if (match != null && !p.payloadHash().equals(match.getPayloadHash())) {
+                results[p.index()] = result(p.index(), p.requestId().toString(), ItemStatus.REJECTED,
+                        "Idempotency key already used with different payload");
+                continue;
+            }
+            if (match == null) {
+                match = byRequestId.get(p.requestId());
+            }
+            if (match != null) {
+                results[p.index()] = result(p.index(), match.getRequestId().toString(), ItemStatus.DUPLICATE,
+                        "Request accepted (duplicate)");
+                continue;
+            }
+            remaining.add(p);
+        }
+        return remaining;
+    }
+
+    /** @return request ids that were actually inserted (conflicts are skipped) */
+    private Set<UUID> insertRequests(UUID tenantId, List<PendingItem> items) {
+        if (items.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        Set<UUID> inserted = new HashSet<>(items.size() * 2);
+
+        for (int from = 0; from < items.size(); from += INSERT_CHUNK_SIZE) {
+            List<PendingItem> chunk = items.subList(from, Math.min(from + INSERT_CHUNK_SIZE, items.size()));
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO notification_requests (id, tenant_id, request_id, idempotency_key, event_type, "
+                  + "payload, payload_hash, status, created_at, updated_at) VALUES ");
+            List<Object> args = new ArrayList<>(chunk.size() * 9);
+            for (int i = 0; i < chunk.size(); i++) {
+                PendingItem p = chunk.get(i);
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?::jsonb, ?, 'PENDING', ?, ?)");
+                args.add(UUID.randomUUID());
+                args.add(tenantId);
+                args.add(p.requestId());
+                args.add(p.idempotencyKey());
+                args.add(p.request().getEventType());
+                args.add(p.payloadJson());
+                args.add(p.payloadHash());
+                args.add(now);
+                args.add(now);
+            }
+            sql.append(" ON CONFLICT DO NOTHING RETURNING request_id");
+
+            jdbcTemplate.query(sql.toString(),
+                    rs -> { inserted.add(rs.getObject(1, UUID.class)); },
+                    args.toArray());
+        }
+        return inserted;
+    }
+
+    private void insertOutbox(UUID tenantId, List<PendingItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+
+        for (int from = 0; from < items.size(); from += INSERT_CHUNK_SIZE) {
+            List<PendingItem> chunk = items.subList(from, Math.min(from + INSERT_CHUNK_SIZE, items.size()));
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO notification_outbox (id, tenant_id, aggregate_id, event_payload, status, "
+                  + "retry_count, priority, created_at, updated_at) VALUES ");
+            List<Object> args = new ArrayList<>(chunk.size() * 7);
+            for (int i = 0; i < chunk.size(); i++) {
+                PendingItem p = chunk.get(i);
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?::jsonb, 'PENDING', 0, ?, ?, ?)");
+                args.add(UUID.randomUUID());
+                args.add(tenantId);
+                args.add(p.requestId());
+                args.add(p.eventJson());
+                args.add(NotificationPriority.levelOf(p.request().getPriority()));
+                args.add(now);
+                args.add(now);
+            }
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+    }
+
+    private static BatchNotificationResponseDTO summarize(String correlationId, ItemResult[] results) {
+        int accepted = 0, duplicates = 0, rejected = 0;
+        for (ItemResult r : results) {
+            switch (r.getStatus()) {
+                case ACCEPTED -> accepted++;
+                case DUPLICATE -> duplicates++;
+                case REJECTED -> rejected++;
+            }
+        }
+        return BatchNotificationResponseDTO.builder()
+                .correlationId(correlationId)
+                .accepted(accepted)
+                .duplicates(duplicates)
+                .rejected(rejected)
+                .results(List.of(results))
+                .build();
+    }
+
+    private static ItemResult result(int index, String requestId, ItemStatus status, String message) {
+        return ItemResult.builder()
+                .index(index)
+                .requestId(requestId)
+                .status(status)
+                .message(message)
+                .build();
+    }
+
+    private static String requestIdOf(BatchNotificationRequestDTO.Item item) {
+        return item != null && item.getNotification() != null ? item.getNotification().getRequestId() : null;
+    }
+}
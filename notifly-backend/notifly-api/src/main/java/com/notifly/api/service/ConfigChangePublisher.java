@@ -0,0 +1,52 @@
+package com.notifly.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notifly.common.config.RedisChannels;
+import com.notifly.common.dto.ConfigChangeEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Tells workers that templates or channel policies changed so they evict their
+ * in-process copies (DeliveryConfigCache in notifly-worker).
+ *
+ * Publishing is best-effort: if Redis is down the change still takes effect on
+ * workers once their cache entry expires.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ConfigChangePublisher {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void templateChanged(UUID tenantId, String channel) {
+        publish(ConfigChangeEvent.builder()
+                .type(ConfigChangeEvent.Type.TEMPLATE)
+                .tenantId(tenantId)
+                .channel(channel)
+                .build());
+    }
+
+    public void channelPolicyChanged(UUID tenantId, String eventType) {
+        publish(ConfigChangeEvent.builder()
+                .type(ConfigChangeEvent.Type.CHANNEL_POLICY)
+                .tenantId(tenantId)
+                .eventType(eventType)
+                .build());
+    }
+
+    private void publish(ConfigChangeEvent event) {
+        try {
+            redisTemplate.convertAndSend(RedisChannels.CONFIG_CHANGES, objectMapper.writeValueAsString(event));
+            log.debug("Config change published: {}", event);
+        } catch (Exception e) {
+            log.warn("Failed to publish config change {}: {}", event, e.getMessage());
+        }
+    }
+}
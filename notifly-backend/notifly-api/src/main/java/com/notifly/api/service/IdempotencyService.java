@@ -28,6 +28,11 @@ public class IdempotencyService {
     }
 
     public Optional<NotificationRequest> checkIdempotency(UUID tenantId, String idempotencyKey, NotificationRequestDTO request) {
+        return checkIdempotency(tenantId, idempotencyKey, computePayloadHash(request));
+    }
+
+    /** Same check with a hash the caller already computed (see NotificationService.prepare). */
+    public Optional<NotificationRequest> checkIdempotency(UUID tenantId, String idempotencyKey, String newPayloadHash) {
         Optional<NotificationRequest> existing =
             notificationRequestRepository.findByTenantIdAndIdempotencyKey(tenantId, idempotencyKey);
 
@@ -35,7 +40,6 @@ public class IdempotencyService {
             NotificationRequest existingRequest = existing.get();
 
             // Validate payload consistency — reused key must have identical payload
-            String newPayloadHash = computePayloadHash(request);
             if (!newPayloadHash.equals(existingRequest.getPayloadHash())) {
                 log.warn("Idempotency key reused with different payload for tenant {}", tenantId);
                 throw new IdempotencyException(
@@ -1,5 +1,6 @@
 package com.notifly.api.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notifly.common.context.CorrelationIdContext;
 import com.notifly.common.domain.entity.NotificationOutbox;
@@ -10,6 +11,7 @@ import com.notifly.common.domain.repository.NotificationRequestRepository;
 import com.notifly.common.dto.KafkaNotificationEvent;
 import com.notifly.common.dto.NotificationRequestDTO;
 import com.notifly.common.dto.NotificationResponseDTO;
+import com.notifly.common.enums.NotificationPriority;
 import com.notifly.common.enums.NotificationStatus;
 import com.notifly.common.exception.ValidationException;
 import lombok.RequiredArgsConstructor;
@@ -44,10 +46,54 @@ public class NotificationService {
     private final IdempotencyService idempotencyService;
     private final ObjectMapper objectMapper;
 
+    /** Request id, serialized payload and its hash — computed once, before admission. */
+    public record Prepared(UUID requestId, String payloadJson, String payloadHash) {}
+
+    /**
+     * Serialize and hash the request up front so AdmissionService can reserve
+     * the Idempotency-Key with the final request id and payload hash.
+     */
+    public Prepared prepare(NotificationRequestDTO request) {
+        UUID requestId;
+        try {
+            requestId = request.getRequestId() != null
+                    ? UUID.fromString(request.getRequestId())
+                    : UUID.randomUUID();
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("request_id must be a valid UUID");
+        }
+        try {
+            // CQ-003 FIX: serialize once, pass the JSON string directly to the hash method.
+            // The old computePayloadHash(request) re-serialized the DTO internally,
+            // causing two ObjectMapper.writeValueAsString() calls per request.
+            String payloadJson = objectMapper.writeValueAsString(request);
+            return new Prepared(requestId, payloadJson, idempotencyService.computePayloadHashFromJson(payloadJson));
+        } catch (JsonProcessingException e) {
+            throw new ValidationException("Notification payload could not be serialized");
+        }
+    }
+
+    /**
+     * Persist an admitted request and its outbox row.
+     *
+     * Idempotency-Key duplicates are answered by AdmissionService before this
+     * is called, so there is no lookup here; the unique indexes on
+     * notification_requests still catch anything that slips past Redis.
+     *
+     * FIXED: The request row is flushed right away. NotificationRequest gets its
+     * id in @PrePersist, so save() did not flush and a unique-index violation
+     * only surfaced at commit — past the DataIntegrityViolationException
+     * handler, as a 500. The violation now propagates from here (rolling the
+     * transaction back) and the caller answers it with {@link #resolveDuplicate}.
+     *
+     * @throws DataIntegrityViolationException the request id or Idempotency-Key
+     *         is already stored
+     */
     @Transactional
     public NotificationResponseDTO submitNotification(
             String tenantIdStr,
             NotificationRequestDTO request,
+            Prepared prepared,
             String idempotencyKey,
             String correlationId) {
 
@@ -56,30 +102,10 @@ public class NotificationService {
 
         String recipientAddress = extractRecipientAddress(request);
 
-        if (idempotencyKey != null) {
-            Optional<NotificationRequest> existing =
-                idempotencyService.checkIdempotency(tenantId, idempotencyKey, request);
-            if (existing.isPresent()) {
-                log.info("[{}] Idempotent request for key: {}", correlationId, idempotencyKey);
-                return NotificationResponseDTO.builder()
-                        .requestId(existing.get().getRequestId().toString())
-                        .status(NotificationStatus.ACCEPTED.name())
-                        .message("Request accepted (duplicate)")
-                        .correlationId(correlationId)
-                        .build();
-            }
-        }
-
         try {
-            UUID requestId = request.getRequestId() != null
-                    ? UUID.fromString(request.getRequestId())
-                    : UUID.randomUUID();
-
-            // CQ-003 FIX: serialize once, pass the JSON string directly to the hash method.
-            // The old computePayloadHash(request) re-serialized the DTO internally,
-            // causing two ObjectMapper.writeValueAsString() calls per request.
-            String payloadJson = objectMapper.writeValueAsString(request);
-            String payloadHash = idempotencyService.computePayloadHashFromJson(payloadJson);
+            UUID requestId = prepared.requestId();
+            String payloadJson = prepared.payloadJson();
+            String payloadHash = prepared.payloadHash();
 
             NotificationRequest notifRequest = NotificationRequest.builder()
                     .tenantId(tenantId)
@@ -91,26 +117,18 @@ public class NotificationService {
                     .status("PENDING")
                     .build();
 
-            requestRepository.save(notifRequest);
+            requestRepository.saveAndFlush(notifRequest);
             log.debug("[{}] Notification request saved: {}", correlationId, requestId);
 
-            KafkaNotificationEvent kafkaEvent = KafkaNotificationEvent.builder()
-                    .requestId(requestId)
-                    .tenantId(tenantId)
-                    .eventType(request.getEventType())
-                    .userId(request.getUserId())
-                    .recipient(recipientAddress)
-                    .channels(request.getChannels())
-                    .correlationId(correlationId)
-                    .retryCount(0)
-                    .createdAt(System.currentTimeMillis())
-                    .build();
+            KafkaNotificationEvent kafkaEvent =
+                buildKafkaEvent(tenantId, requestId, request, recipientAddress, correlationId);
 
             NotificationOutbox outbox = NotificationOutbox.builder()
                     .tenantId(tenantId)
                     .aggregateId(requestId.toString())
                     .eventPayload(objectMapper.writeValueAsString(kafkaEvent))
                     .status(NotificationOutbox.OutboxStatus.PENDING)
+                    .priority(NotificationPriority.levelOf(request.getPriority()))
                     .build();
 
             outboxRepository.save(outbox);
@@ -125,12 +143,7 @@ public class NotificationService {
 
         } catch (DataIntegrityViolationException e) {
             log.info("[{}] Duplicate detected via DB constraint", correlationId);
-            return NotificationResponseDTO.builder()
-                    .requestId(request.getRequestId())
-                    .status(NotificationStatus.ACCEPTED.name())
-                    .message("Request accepted (duplicate)")
-                    .correlationId(correlationId)
-                    .build();
+            throw e;
 
         } catch (Exception e) {
             log.error("[{}] Failed to submit notification", correlationId, e);
@@ -138,6 +151,37 @@ public class NotificationService {
         }
     }
 
+    /**
+     * Answer a submission that hit the unique indexes on notification_requests
+     * — Redis no longer held its Idempotency-Key (TTL expired, data lost) or
+     * the client replayed a request_id. Runs after the failed transaction has
+     * rolled back.
+     *
+     * @throws com.notifly.common.exception.IdempotencyException the key was
+     *         stored with a different payload
+     * @throws DataIntegrityViolationException {@code cause}, if no stored
+     *         request matches — the violation was something else
+     */
+    public NotificationResponseDTO resolveDuplicate(String tenantIdStr, Prepared prepared, String idempotencyKey,
+                                                    String correlationId, DataIntegrityViolationException cause) {
+        UUID tenantId = UUID.fromString(tenantIdStr);
+        Optional<NotificationRequest> existing = idempotencyKey != null
+                ? idempotencyService.checkIdempotency(tenantId, idempotencyKey, prepared.payloadHash())
+                : Optional.empty();
+        if (existing.isEmpty()) {
+            existing = requestRepository.findByTenantIdAndRequestId(tenantId, prepared.requestId());
+        }
+        if (existing.isEmpty()) {
+            throw cause;
+        }
+        return NotificationResponseDTO.builder()
+                .requestId(existing.get().getRequestId().toString())
+                .status(NotificationStatus.ACCEPTED.name())
+                .message("Request accepted (duplicate)")
+                .correlationId(correlationId)
+                .build();
+    }
+
     public Map<String, Object> getNotificationStatus(String tenantIdStr, String requestId) {
         UUID tenantId = UUID.fromString(tenantIdStr);
         UUID requestUUID = UUID.fromString(requestId);
@@ -159,7 +203,24 @@ public class NotificationService {
                 "createdAt",    request.get().getCreatedAt());
     }
 
-    private String extractRecipientAddress(NotificationRequestDTO request) {
+    /** Shared with BatchNotificationService so both paths enqueue identical events. */
+    KafkaNotificationEvent buildKafkaEvent(UUID tenantId, UUID requestId, NotificationRequestDTO request,
+                                           String recipientAddress, String correlationId) {
+        return KafkaNotificationEvent.builder()
+                .requestId(requestId)
+                .tenantId(tenantId)
+                .eventType(request.getEventType())
+                .userId(request.getUserId())
+                .recipient(recipientAddress)
+                .channels(request.getChannels())
+                .priority(request.getPriority())
+                .correlationId(correlationId)
+                .retryCount(0)
+                .createdAt(System.currentTimeMillis())
+                .build();
+    }
+
+    String extractRecipientAddress(NotificationRequestDTO request) {
         if (request.getRecipient() == null || request.getRecipient().isEmpty()) {
             throw new ValidationException("recipient map is required");
         }
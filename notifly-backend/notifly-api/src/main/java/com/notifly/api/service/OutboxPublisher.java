@@ -5,36 +5,72 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.notifly.common.domain.entity.NotificationOutbox;
-import com.notifly.common.domain.entity.NotificationOutbox.OutboxStatus;
 import com.notifly.common.domain.repository.NotificationOutboxRepository;
+import com.notifly.common.metrics.PipelineStage;
+import com.notifly.common.metrics.StageTimers;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Outbox pattern publisher — polls for PENDING events and publishes to Kafka.
  *
  * FIXES:
  *  1. Async callback transaction fix (BUG-002):
- *     whenComplete() runs on a Kafka sender thread AFTER publishPendingEvents()'s
- *     @Transactional has already committed. Any outboxRepository.save() inside the
- *     callback had no active transaction and would throw or silently fail.
+ *     whenComplete() runs on a Kafka sender thread AFTER the claiming
+ *     transaction has committed, so status updates need their own transaction.
+ *     The self-injected proxy (@Lazy) is used to open them.
  *
- *     Fix: self-inject OutboxPublisher via @Lazy to call updateOutboxStatus(), which
- *     opens its own REQUIRES_NEW transaction on the Kafka callback thread.
- *     This is safe because the callback thread is managed by Kafka's sender executor,
- *     not the scheduler thread, so there is no outer transaction to suspend.
- *
- *  2. Async Kafka send — scheduler thread never blocks.
+ *  2. Async Kafka send — the whole batch is in flight at once.
  *  3. Recovery job for FAILED entries.
  *  4. PROCESSING status prevents duplicate sends in multi-instance deployments.
+ *
+ *  5. Batched claiming and status updates:
+ *     Previously each entry cost a save (PROCESSING) plus a findById + save in
+ *     its own REQUIRES_NEW transaction per Kafka callback — ~3 round-trips per
+ *     event. Now one poll is:
+ *       claim    — a single UPDATE ... FOR UPDATE SKIP LOCKED ... RETURNING,
+ *                  so concurrent API instances claim disjoint batches;
+ *       send     — every entry handed to the producer, one flush, then a
+ *                  single wait on all futures (no transaction held meanwhile);
+ *       complete — one bulk UPDATE for the SENT ids and one per distinct
+ *                  error for the FAILED ids.
+ *     Rows left PROCESSING by a crashed instance are returned to PENDING by
+ *     the recovery job after notifly.outbox.processing-timeout-ms.
+ *
+ *  6. With notifly.outbox.relay-mode=wal, OutboxWalRelay publishes new rows
+ *     straight from the replication stream and this poller only claims rows
+ *     older than notifly.outbox.relay.grace-ms (anything the relay missed).
+ *
+ *  7. The outbox_wait stage of notification_stage_seconds (created_at → Kafka
+ *     ack) is recorded per published entry, tagged by plan. The channel tag is
+ *     ALL — the outbox row does not carry it without parsing the payload.
+ *
+ *  8. Priority lane: claimPending orders by priority, and entries with a
+ *     priority above NORMAL are sent first and to notifly.kafka.priority-topic,
+ *     which the worker consumes with its own listener — so an OTP is not
+ *     queued behind the standard topic's lag.
  */
 @Slf4j
 @Component
@@ -42,8 +78,10 @@ public class OutboxPublisher {
 
     private final NotificationOutboxRepository outboxRepository;
     private final KafkaTemplate<String, String> kafkaTemplate;
+    private final QuotaService quotaService;
+    private final StageTimers stageTimers;
 
-    // Self-reference so the whenComplete callback can open its own transaction.
+    // Self-reference so claim/complete run through the transactional proxy.
     // @Lazy breaks the circular Spring proxy dependency.
     @Autowired
     @Lazy
@@ -52,115 +90,182 @@ public class OutboxPublisher {
     @Value("${notifly.kafka.topic:notification.events}")
     private String kafkaTopic;
 
+    @Value("${notifly.kafka.priority-topic:notification.events.priority}")
+    private String priorityTopic;
+
     @Value("${notifly.outbox.batch-size:100}")
     private Integer batchSize;
 
     @Value("${notifly.outbox.max-retry-count:3}")
     private Integer maxRetryCount;
 
+    @Value("${notifly.outbox.send-timeout-ms:30000}")
+    private long sendTimeoutMs;
+
+    @Value("${notifly.outbox.processing-timeout-ms:300000}")
+    private long processingTimeoutMs;
+
+    @Value("${notifly.outbox.relay-mode:poll}")
+    private String relayMode;
+
+    @Value("${notifly.outbox.relay.grace-ms:10000}")
+    private long relayGraceMs;
+
     public OutboxPublisher(NotificationOutboxRepository outboxRepository,
-                           KafkaTemplate<String, String> kafkaTemplate) {
+                           KafkaTemplate<String, String> kafkaTemplate,
+                           QuotaService quotaService,
+                           StageTimers stageTimers) {
         this.outboxRepository = outboxRepository;
         this.kafkaTemplate = kafkaTemplate;
+        this.quotaService = quotaService;
+        this.stageTimers = stageTimers;
     }
 
     /**
-     * Poll for PENDING outbox entries and publish them asynchronously.
+     * Claim a batch of PENDING entries, publish them, and record the outcome.
      *
-     * After marking each entry PROCESSING and firing the async Kafka send,
-     * this method's transaction commits. Status updates (SENT / FAILED) are
-     * handled by updateOutboxStatus(), which runs in its own transaction on
-     * the Kafka callback thread.
+     * Not @Transactional: the claim commits before any Kafka I/O so the row
+     * locks are held only for the duration of the claiming statement.
      */
     @Scheduled(fixedDelayString = "${notifly.outbox.poll-interval:1000}")
-    @Transactional
     public void publishPendingEvents() {
-        List<NotificationOutbox> pendingEvents = outboxRepository.findPending(
-                OutboxStatus.PENDING, batchSize);
+        List<NotificationOutbox> claimed = self.claimBatch();
 
-        if (pendingEvents.isEmpty()) {
+        if (claimed.isEmpty()) {
             log.trace("OutboxPublisher: No pending events");
             return;
         }
 
-        log.info("OutboxPublisher: Publishing {} pending events", pendingEvents.size());
-
-        for (NotificationOutbox outboxEntry : pendingEvents) {
-            // Mark PROCESSING before sending — prevents another API instance from
-            // picking up the same entry while the Kafka send is in flight.
-            outboxEntry.setStatus(OutboxStatus.PROCESSING);
-            outboxRepository.save(outboxEntry);
-
-            UUID entryId = outboxEntry.getId();
-
-            // FIXED BUG-002: capture the ID (not the entity) for use in the callback.
-            // The entity is a JPA-managed object tied to the current transaction;
-            // the callback runs after that transaction closes so the entity may be
-            // detached. Using the ID and re-loading inside updateOutboxStatus() is safe.
-            kafkaTemplate
-                .send(kafkaTopic, outboxEntry.getAggregateId(), outboxEntry.getEventPayload())
-                .whenComplete((result, ex) -> {
-                    if (ex != null) {
-                        log.error("OutboxPublisher: Kafka send failed for aggregateId={}, error={}",
-                                outboxEntry.getAggregateId(), ex.getMessage());
-                        // Opens its own REQUIRES_NEW transaction on this callback thread
-                        self.updateOutboxStatus(entryId, OutboxStatus.FAILED, ex.getMessage());
-                    } else {
-                        log.debug("OutboxPublisher: Published aggregateId={}, offset={}",
-                                outboxEntry.getAggregateId(),
-                                result.getRecordMetadata().offset());
-                        self.updateOutboxStatus(entryId, OutboxStatus.SENT, null);
-                    }
-                });
-        }
+        log.info("OutboxPublisher: Publishing {} pending events", claimed.size());
+        publishClaimed(claimed);
     }
 
     /**
-     * Persist the final SENT / FAILED status of an outbox entry.
-     *
-     * PROPAGATION.REQUIRES_NEW: always opens a fresh transaction regardless of
-     * the caller's context. Called from the Kafka callback thread (no outer
-     * transaction exists there), so REQUIRES_NEW is equivalent to REQUIRED here,
-     * but it is explicit and protects against any future call-site changes.
+     * Publish entries already moved to PROCESSING and record the outcome.
+     * Shared by the poller and OutboxWalRelay.
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void updateOutboxStatus(UUID outboxId, OutboxStatus status, String error) {
-        outboxRepository.findById(outboxId).ifPresentOrElse(entry -> {
-            entry.setStatus(status);
-            if (error != null) {
-                entry.setLastError(error);
+    public void publishClaimed(List<NotificationOutbox> claimed) {
+        // RETURNING order is unspecified — hand priority entries to the producer first
+        List<NotificationOutbox> ordered = new ArrayList<>(claimed);
+        ordered.sort(Comparator.comparingInt(OutboxPublisher::priorityOf).reversed());
+
+        Map<UUID, CompletableFuture<SendResult<String, String>>> sends = new LinkedHashMap<>();
+        for (NotificationOutbox outboxEntry : ordered) {
+            try {
+                sends.put(outboxEntry.getId(), kafkaTemplate.send(
+                        priorityOf(outboxEntry) > 0 ? priorityTopic : kafkaTopic,
+                        outboxEntry.getAggregateId(), outboxEntry.getEventPayload()));
+            } catch (Exception e) {
+                sends.put(outboxEntry.getId(), CompletableFuture.failedFuture(e));
             }
-            entry.setRetryCount(entry.getRetryCount() == null ? 1 : entry.getRetryCount() + 1);
-            if (status == OutboxStatus.SENT) {
-                entry.setSentAt(Instant.now());
+        }
+        kafkaTemplate.flush();
+        awaitAll(sends.values());
+        long ackedAt = System.currentTimeMillis();
+
+        List<UUID> sent = new ArrayList<>();
+        Map<String, List<UUID>> failedByError = new HashMap<>();
+        sends.forEach((id, future) -> {
+            String error = failureOf(future);
+            if (error == null) {
+                sent.add(id);
+            } else {
+                failedByError.computeIfAbsent(error, e -> new ArrayList<>()).add(id);
             }
-            outboxRepository.save(entry);
-            log.debug("OutboxPublisher: Status updated to {} for outboxId={}", status, outboxId);
-        }, () -> log.warn("OutboxPublisher: Entry not found during status update — outboxId={}", outboxId));
+        });
+
+        self.completeBatch(sent, failedByError);
+        recordOutboxWait(claimed, sent, ackedAt);
+
+        if (!failedByError.isEmpty()) {
+            log.error("OutboxPublisher: {} of {} events failed to publish: {}",
+                    claimed.size() - sent.size(), claimed.size(), failedByError.keySet());
+        }
+    }
+
+    private void recordOutboxWait(List<NotificationOutbox> claimed, List<UUID> sent, long ackedAt) {
+        if (sent.isEmpty()) {
+            return;
+        }
+        Set<UUID> sentIds = new HashSet<>(sent);
+        for (NotificationOutbox entry : claimed) {
+            if (entry.getCreatedAt() != null && sentIds.contains(entry.getId())) {
+                stageTimers.recordMillis(PipelineStage.OUTBOX_WAIT, StageTimers.ALL,
+                        quotaService.limitsFor(entry.getTenantId()).plan(),
+                        ackedAt - entry.getCreatedAt().toEpochMilli());
+            }
+        }
+    }
+
+    @Transactional
+    public List<NotificationOutbox> claimBatch() {
+        // In WAL relay mode the poller is only a fallback for rows the relay missed
+        long graceMs = "wal".equalsIgnoreCase(relayMode) ? relayGraceMs : 0;
+        return outboxRepository.claimPending(batchSize, graceMs);
+    }
+
+    /**
+     * Persist the final SENT / FAILED status of a batch in one transaction.
+     */
+    @Transactional
+    public void completeBatch(List<UUID> sent, Map<String, List<UUID>> failedByError) {
+        if (!sent.isEmpty()) {
+            outboxRepository.markSent(sent, Instant.now());
+        }
+        failedByError.forEach((error, ids) -> outboxRepository.markFailed(ids, error));
+        log.debug("OutboxPublisher: Marked {} SENT, {} FAILED",
+                sent.size(), failedByError.values().stream().mapToInt(List::size).sum());
     }
 
     /**
      * Recovery job: reset FAILED entries (below max retries) back to PENDING
-     * so the main poll picks them up again.
+     * so the main poll picks them up again, and release stale PROCESSING claims.
      */
     @Scheduled(fixedDelayString = "${notifly.outbox.recovery-interval:30000}")
     @Transactional
     public void recoverFailedEvents() {
-        List<NotificationOutbox> failedEvents = outboxRepository.findFailedForRecovery(
-                OutboxStatus.FAILED, maxRetryCount, batchSize);
+        int stale = outboxRepository.resetStaleProcessing(
+                Instant.now().minusMillis(processingTimeoutMs));
+        if (stale > 0) {
+            log.warn("OutboxPublisher: Released {} stale PROCESSING outbox events", stale);
+        }
 
-        if (failedEvents.isEmpty()) {
+        int recovered = outboxRepository.resetFailedForRecovery(maxRetryCount, batchSize);
+        if (recovered == 0) {
             log.trace("OutboxPublisher: No failed events to recover");
             return;
         }
+        log.warn("OutboxPublisher: Reset {} failed outbox events to PENDING", recovered);
+    }
+
+    private void awaitAll(Collection<CompletableFuture<SendResult<String, String>>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                    .get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("OutboxPublisher: Batch not acknowledged within {}ms", sendTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Individual failures are inspected per entry
+        }
+    }
 
-        log.warn("OutboxPublisher: Recovering {} failed outbox events", failedEvents.size());
+    private static int priorityOf(NotificationOutbox entry) {
+        return entry.getPriority() != null ? entry.getPriority() : 0;
+    }
 
-        for (NotificationOutbox outboxEntry : failedEvents) {
-            outboxEntry.setStatus(OutboxStatus.PENDING);
-            outboxRepository.save(outboxEntry);
-            log.info("OutboxPublisher: Reset failed entry to PENDING: aggregateId={}",
-                    outboxEntry.getAggregateId());
+    /** @return the failure message, or null if the send completed successfully */
+    private static String failureOf(CompletableFuture<SendResult<String, String>> future) {
+        if (!future.isDone()) {
+            return "Kafka send not acknowledged before timeout";
+        }
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,363 @@
+package com.notifly.api.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.LogSequenceNumber;
+import org.postgresql.replication.PGReplicationStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.notifly.common.domain.entity.NotificationOutbox;
+import com.notifly.common.domain.repository.NotificationOutboxRepository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log-based outbox relay — streams INSERTs on notification_outbox from a
+ * Postgres logical replication slot (pgoutput) and publishes them to Kafka.
+ *
+ * Enabled with notifly.outbox.relay-mode=wal. Removes the up-to-1s poll delay
+ * and the constant polling load on idx_notification_outbox_pending; a new row
+ * reaches Kafka as soon as its transaction commits.
+ *
+ * Flow per micro-batch (inserts from committed transactions, flushed when the
+ * stream goes idle or the batch is full):
+ *   1. claimByIds — PENDING → PROCESSING for exactly the ids seen in the WAL
+ *      (rows the poller already took are skipped, so nothing is sent twice);
+ *   2. OutboxPublisher.publishClaimed — send, flush, await, bulk status update;
+ *   3. checkpoint — the slot's flushed LSN is advanced to the last commit only
+ *      after step 2, so a crash replays the batch and step 1 filters it.
+ *
+ * FIXED: The slot's confirmed LSN only moved on outbox COMMITs. pgoutput sends
+ * nothing for transactions outside the publication, so on a quiet outbox the
+ * slot held back WAL for all other write traffic. When the stream is idle, no
+ * batch is pending and no transaction is open, the last received LSN (advanced
+ * by the server's keepalives) is now confirmed as well; the driver reports it
+ * with its next status update. When relay-mode is switched back to poll,
+ * OutboxWalSlotCleanup drops the slot.
+ *
+ * OutboxPublisher keeps polling as the fallback for rows older than
+ * notifly.outbox.relay.grace-ms (relay down, slot dropped, publish failures).
+ *
+ * Requirements: wal_level=logical (default on Supabase), the
+ * notifly_outbox_pub publication (changelog 022), and a direct database URL —
+ * replication does not work through a transaction-mode pooler, hence
+ * notifly.outbox.relay.jdbc-url.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "notifly.outbox.relay-mode", havingValue = "wal")
+public class OutboxWalRelay implements SmartLifecycle {
+
+    private static final String OUTBOX_TABLE = "notification_outbox";
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final OutboxPublisher outboxPublisher;
+
+    @Value("${notifly.outbox.relay.jdbc-url:${spring.datasource.url}}")
+    private String jdbcUrl;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${notifly.outbox.relay.slot-name:notifly_outbox_relay}")
+    private String slotName;
+
+    @Value("${notifly.outbox.relay.publication:notifly_outbox_pub}")
+    private String publication;
+
+    @Value("${notifly.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${notifly.outbox.relay.status-interval-ms:10000}")
+    private long statusIntervalMs;
+
+    @Value("${notifly.outbox.relay.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread relayThread;
+
+    public OutboxWalRelay(NotificationOutboxRepository outboxRepository, OutboxPublisher outboxPublisher) {
+        this.outboxRepository = outboxRepository;
+        this.outboxPublisher = outboxPublisher;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        relayThread = Thread.ofPlatform().name("outbox-wal-relay").daemon().start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (relayThread != null) {
+            relayThread.interrupt();
+            try {
+                relayThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                stream();
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("OutboxWalRelay: Replication stream failed, reconnecting in {}ms — poller covers the gap: {}",
+                        reconnectDelayMs, e.getMessage());
+            }
+            try {
+                Thread.sleep(reconnectDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("OutboxWalRelay: Stopped");
+    }
+
+    private void stream() throws SQLException, InterruptedException {
+        try (Connection connection = openReplicationConnection()) {
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            ensureSlot(connection, pgConnection);
+
+            try (PGReplicationStream stream = pgConnection.getReplicationAPI()
+                    .replicationStream()
+                    .logical()
+                    .withSlotName(slotName)
+                    .withSlotOption("proto_version", 1)
+                    .withSlotOption("publication_names", publication)
+                    .withStatusInterval((int) statusIntervalMs, TimeUnit.MILLISECONDS)
+                    .start()) {
+
+                log.info("OutboxWalRelay: Streaming slot={} publication={}", slotName, publication);
+
+                PgOutputDecoder decoder = new PgOutputDecoder(OUTBOX_TABLE);
+                List<UUID> transactionIds = new ArrayList<>();
+                List<UUID> batch = new ArrayList<>();
+                LogSequenceNumber committedLsn = null;
+                boolean inTransaction = false;
+
+                while (running) {
+                    ByteBuffer message = stream.readPending();
+
+                    if (message == null) {
+                        // Idle: publish what has committed so far, then confirm it to the slot
+                        if (!batch.isEmpty()) {
+                            publish(batch);
+                            batch.clear();
+                        }
+                        if (committedLsn != null) {
+                            checkpoint(stream, committedLsn);
+                            committedLsn = null;
+                        }
+                        if (!inTransaction) {
+                            // Nothing of ours is outstanding — let the slot release WAL
+                            // from other tables' traffic too
+                            LogSequenceNumber received = stream.getLastReceiveLSN();
+                            if (received.compareTo(stream.getLastFlushedLSN()) > 0) {
+                                stream.setAppliedLSN(received);
+                                stream.setFlushedLSN(received);
+                            }
+                        }
+                        TimeUnit.MILLISECONDS.sleep(1);
+                        continue;
+                    }
+
+                    PgOutputDecoder.Event event = decoder.decode(message);
+                    switch (event.kind()) {
+                        case BEGIN -> {
+                            transactionIds.clear();
+                            inTransaction = true;
+                        }
+                        case INSERT -> transactionIds.add(event.outboxId());
+                        case COMMIT -> {
+                            batch.addAll(transactionIds);
+                            transactionIds.clear();
+                            inTransaction = false;
+                            committedLsn = LogSequenceNumber.valueOf(event.commitEndLsn());
+                            if (batch.size() >= batchSize) {
+                                publish(batch);
+                                batch.clear();
+                                checkpoint(stream, committedLsn);
+                                committedLsn = null;
+                            }
+                        }
+                        case OTHER -> { }
+                    }
+                }
+            }
+        }
+    }
+
+    private void publish(List<UUID> ids) {
+        List<NotificationOutbox> claimed = outboxRepository.claimByIds(ids);
+        if (claimed.isEmpty()) {
+            return; // Replayed after a restart, or the poller got there first
+        }
+        log.debug("OutboxWalRelay: Publishing {} events", claimed.size());
+        outboxPublisher.publishClaimed(claimed);
+    }
+
+    private void checkpoint(PGReplicationStream stream, LogSequenceNumber lsn) throws SQLException {
+        stream.setAppliedLSN(lsn);
+        stream.setFlushedLSN(lsn);
+        stream.forceUpdateStatus();
+    }
+
+    private Connection openReplicationConnection() throws SQLException {
+        Properties props = new Properties();
+        PGProperty.USER.set(props, username);
+        PGProperty.PASSWORD.set(props, password);
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(props, "10");
+        PGProperty.REPLICATION.set(props, "database");
+        PGProperty.PREFER_QUERY_MODE.set(props, "simple");
+        return DriverManager.getConnection(jdbcUrl, props);
+    }
+
+    private void ensureSlot(Connection connection, PGConnection pgConnection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT 1 FROM pg_replication_slots WHERE slot_name = ?")) {
+            ps.setString(1, slotName);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+        pgConnection.getReplicationAPI()
+                .createReplicationSlot()
+                .logical()
+                .withSlotName(slotName)
+                .withOutputPlugin("pgoutput")
+                .make();
+        log.info("OutboxWalRelay: Created replication slot {}", slotName);
+    }
+
+    /**
+     * Minimal pgoutput (protocol v1) decoder: tracks Relation messages to learn
+     * column order and extracts the id of each INSERT into the outbox table.
+     * Everything else (UPDATE, DELETE, TRUNCATE, TYPE, ORIGIN) is OTHER —
+     * the publication only publishes inserts anyway.
+     */
+    static final class PgOutputDecoder {
+
+        enum Kind { BEGIN, INSERT, COMMIT, OTHER }
+
+        record Event(Kind kind, UUID outboxId, long commitEndLsn) {
+            static final Event BEGIN = new Event(Kind.BEGIN, null, 0);
+            static final Event OTHER = new Event(Kind.OTHER, null, 0);
+        }
+
+        private final String table;
+        // relation OID → index of the "id" column, for the outbox table only
+        private final Map<Integer, Integer> idColumnByRelation = new HashMap<>();
+
+        PgOutputDecoder(String table) {
+            this.table = table;
+        }
+
+        Event decode(ByteBuffer buffer) {
+            char tag = (char) buffer.get();
+            return switch (tag) {
+                case 'B' -> Event.BEGIN;
+                case 'C' -> {
+                    buffer.get();                  // flags
+                    buffer.getLong();              // commit LSN
+                    long endLsn = buffer.getLong(); // end of the transaction
+                    yield new Event(Kind.COMMIT, null, endLsn);
+                }
+                case 'R' -> {
+                    relation(buffer);
+                    yield Event.OTHER;
+                }
+                case 'I' -> insert(buffer);
+                default -> Event.OTHER;
+            };
+        }
+
+        private void relation(ByteBuffer buffer) {
+            int relationId = buffer.getInt();
+            readString(buffer);                    // namespace
+            String name = readString(buffer);
+            buffer.get();                          // replica identity
+            short columns = buffer.getShort();
+
+            Integer idColumn = null;
+            for (int i = 0; i < columns; i++) {
+                buffer.get();                      // flags
+                String column = readString(buffer);
+                buffer.getInt();                   // type OID
+                buffer.getInt();                   // type modifier
+                if ("id".equals(column)) {
+                    idColumn = i;
+                }
+            }
+            if (table.equals(name) && idColumn != null) {
+                idColumnByRelation.put(relationId, idColumn);
+            }
+        }
+
+        private Event insert(ByteBuffer buffer) {
+            Integer idColumn = idColumnByRelation.get(buffer.getInt());
+            if (idColumn == null) {
+                return Event.OTHER;
+            }
+            buffer.get();                          // 'N' — new tuple
+            short columns = buffer.getShort();
+            for (int i = 0; i < columns; i++) {
+                char kind = (char) buffer.get();
+                if (kind != 't') {
+                    continue;                      // 'n' null, 'u' unchanged TOAST
+                }
+                byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+                if (i == idColumn) {
+                    return new Event(Kind.INSERT, UUID.fromString(new String(value, StandardCharsets.UTF_8)), 0);
+                }
+            }
+            return Event.OTHER;
+        }
+
+        private static String readString(ByteBuffer buffer) {
+            int start = buffer.position();
+            while (buffer.get() != 0) {
+                // scan to the NUL terminator
+            }
+            byte[] bytes = new byte[buffer.position() - start - 1];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
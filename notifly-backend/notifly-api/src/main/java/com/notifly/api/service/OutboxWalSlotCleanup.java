@@ -0,0 +1,59 @@
+package com.notifly.api.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops the OutboxWalRelay replication slot when the relay is switched off.
+ *
+ * A logical slot pins WAL from its confirmed LSN onwards. Once nothing streams
+ * from it (relay-mode back to poll) that LSN never moves again and Postgres
+ * keeps every WAL segment written after it, until the disk fills. On startup in
+ * poll mode an inactive slot of that name is dropped; one still in use by a
+ * node in wal mode is left alone. Disable with
+ * notifly.outbox.relay.drop-slot-when-disabled=false to keep the slot (and its
+ * WAL) across a short switch back to polling.
+ *
+ * Needs the REPLICATION attribute (or superuser); without it the slot is left
+ * in place with a warning and must be dropped by hand:
+ *   SELECT pg_drop_replication_slot('notifly_outbox_relay');
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "notifly.outbox.relay-mode", havingValue = "poll", matchIfMissing = true)
+public class OutboxWalSlotCleanup {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${notifly.outbox.relay.slot-name:notifly_outbox_relay}")
+    private String slotName;
+
+    @Value("${notifly.outbox.relay.drop-slot-when-disabled:true}")
+    private boolean dropSlot;
+
+    public OutboxWalSlotCleanup(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void dropInactiveSlot() {
+        if (!dropSlot) {
+            return;
+        }
+        try {
+            Integer dropped = jdbcTemplate.queryForObject(
+                    "SELECT count(pg_drop_replication_slot(slot_name)) FROM pg_replication_slots " +
+                    "WHERE slot_name = ? AND NOT active", Integer.class, slotName);
+            if (dropped != null && dropped > 0) {
+                log.info("OutboxWalSlotCleanup: Dropped unused replication slot {}", slotName);
+            }
+        } catch (RuntimeException e) {
+            log.warn("OutboxWalSlotCleanup: Could not drop replication slot {} — it retains WAL until dropped: {}",
+                    slotName, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.notifly.api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.notifly.common.domain.entity.Tenant;
+import com.notifly.common.domain.entity.TenantUsage;
+import com.notifly.common.domain.repository.TenantRepository;
+import com.notifly.common.domain.repository.TenantUsageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metered monthly quota (Tenant.monthlyRequestLimit) per tenant.
+ *
+ * Three tiers, so the submission path never waits on a counter write:
+ *
+ *   1. Node-local shards — admitted requests are added to a LongAdder per
+ *      (tenant, month) on this node; no I/O.
+ *   2. Redis — {@link #flush} pushes each node's delta with INCRBY every
+ *      notifly.quota.flush-interval-ms into quota:{tenantId}:{yyyy-MM}.
+ *      AdmissionService enforces the limit against that counter plus this
+ *      node's unflushed delta inside its admission script (a read only).
+ *      Other nodes' unflushed deltas are invisible, so a tenant can overshoot
+ *      by at most what the cluster admits in one flush interval.
+ *   3. Postgres — {@link #reconcile} copies the Redis counters for the current
+ *      and previous month into tenant_usage. It is idempotent (absolute values,
+ *      never lowered), so every API node may run it. A counter Redis has lost
+ *      is restored from tenant_usage.
+ *
+ * FIXED: Restoring a lost counter used INCRBY (inDb - inRedis). With every
+ * node reconciling, a Redis loss was added back once per node, and refunds
+ * flushed after a reconcile were charged again. A counter is now restored only
+ * when its key is missing, with SET NX — idempotent across nodes. flush() no
+ * longer recreates a missing key from its own delta (which hid the loss from
+ * reconcile): it seeds the key from tenant_usage the same way first.
+ *
+ * Months are UTC calendar months.
+ */
+@Slf4j
+@Service
+public class QuotaService {
+
+    public record TenantLimits(String plan, int monthlyRequestLimit) {
+        public boolean unlimited() {
+            return "ENTERPRISE".equals(plan) || monthlyRequestLimit <= 0;
+        }
+    }
+
+    public record Usage(YearMonth period, long used, TenantLimits limits) {}
+
+    private record PeriodKey(UUID tenantId, YearMonth period) {}
+
+    /**
+     * KEYS[1] = counter, ARGV[1] = delta, ARGV[2] = TTL ms.
+     * Returns the new value, or nil if the counter does not exist.
+     */
+    private static final String INCR_IF_EXISTS_LUA =
+        "if redis.call('EXISTS', KEYS[1]) == 0 then return false end\n" +
+        "local v = redis.call('INCRBY', KEYS[1], ARGV[1])\n" +
+        "redis.call('PEXPIRE', KEYS[1], ARGV[2])\n" +
+        "return v";
+
+    /** One node's shard of a tenant's counter: not yet sent, and being sent. */
+    private static final class LocalShard {
+        final LongAdder pending = new LongAdder();
+        final AtomicLong flushing = new AtomicLong();
+
+        long unflushed() {
+            return pending.sum() + flushing.get();
+        }
+    }
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final TenantRepository tenantRepository;
+    private final TenantUsageRepository tenantUsageRepository;
+    private final Cache<UUID, TenantLimits> tenantLimits;
+    private final Map<PeriodKey, LocalShard> shards = new ConcurrentHashMap<>();
+    private final DefaultRedisScript<Long> incrIfExistsScript;
+
+    public QuotaService(
+            RedisTemplate<String, String> redisTemplate,
+            TenantRepository tenantRepository,
+            TenantUsageRepository tenantUsageRepository,
+            @Value("${notifly.admission.tenant-cache-seconds:60}") long tenantCacheSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.tenantRepository = tenantRepository;
+        this.tenantUsageRepository = tenantUsageRepository;
+        this.tenantLimits = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(tenantCacheSeconds))
+                .maximumSize(10_000)
+                .build();
+
+        this.incrIfExistsScript = new DefaultRedisScript<>();
+        this.incrIfExistsScript.setScriptText(INCR_IF_EXISTS_LUA);
+        this.incrIfExistsScript.setResultType(Long.class);
+    }
+
+    public static YearMonth currentPeriod() {
+        return YearMonth.now(ZoneOffset.UTC);
+    }
+
+    public static String counterKey(UUID tenantId, YearMonth period) {
+        return "quota:" + tenantId + ":" + period;
+    }
+
+    /** Plan and monthly limit, cached in-process. */
+    public TenantLimits limitsFor(UUID tenantId) {
+        return tenantLimits.get(tenantId, id -> tenantRepository.findById(id)
+                .map(t -> new TenantLimits(t.getPlan(), t.getMonthlyRequestLimit()))
+                .orElseGet(() -> {
+                    Tenant defaults = Tenant.builder().build();
+                    return new TenantLimits(defaults.getPlan(), defaults.getMonthlyRequestLimit());
+                }));
+    }
+
+    /** Usage admitted on this node that Redis has not seen yet. */
+    public long unflushed(UUID tenantId, YearMonth period) {
+        LocalShard shard = shards.get(new PeriodKey(tenantId, period));
+        return shard != null ? shard.unflushed() : 0L;
+    }
+
+    /** Count admitted requests (negative to give quota back). Never blocks on I/O. */
+    public void record(UUID tenantId, YearMonth period, long permits) {
+        if (permits != 0) {
+            // Add inside compute() so it cannot land on a shard flush() is removing
+            shards.compute(new PeriodKey(tenantId, period), (k, shard) -> {
+                LocalShard target = shard != null ? shard : new LocalShard();
+                target.pending.add(permits);
+                return target;
+            });
+        }
+    }
+
+    /** Current-month usage for the admin metrics endpoint. */
+    public Usage usageFor(UUID tenantId) {
+        YearMonth period = currentPeriod();
+        long used;
+        try {
+            String value = redisTemplate.opsForValue().get(counterKey(tenantId, period));
+            used = value != null ? Long.parseLong(value) : storedUsage(tenantId, period);
+        } catch (RuntimeException e) {
+            log.warn("QuotaService: Redis unavailable, reporting reconciled usage for tenant {}: {}",
+                    tenantId, e.getMessage());
+            used = storedUsage(tenantId, period);
+        }
+        return new Usage(period, used + unflushed(tenantId, period), limitsFor(tenantId));
+    }
+
+    /** Push this node's deltas to Redis. */
+    @Scheduled(fixedDelayString = "${notifly.quota.flush-interval-ms:1000}")
+    public void flush() {
+        YearMonth current = currentPeriod();
+        for (Map.Entry<PeriodKey, LocalShard> entry : shards.entrySet()) {
+            PeriodKey key = entry.getKey();
+            LocalShard shard = entry.getValue();
+
+            // Not sumThenReset(): increments racing with the reset would be lost.
+            // Move the sum to flushing before taking it out of pending, so
+            // unflushed() never under-reports while the delta is in transit.
+            long delta = shard.pending.sum();
+            if (delta == 0) {
+                // Idle shards of past months are no longer needed
+                if (!key.period().equals(current)) {
+                    shards.computeIfPresent(key, (k, s) -> s.unflushed() == 0 ? null : s);
+                }
+                continue;
+            }
+
+            shard.flushing.addAndGet(delta);
+            shard.pending.add(-delta);
+            try {
+                String redisKey = counterKey(key.tenantId(), key.period());
+                String ttl = String.valueOf(ttlFor(key.period()));
+                if (redisTemplate.execute(incrIfExistsScript, List.of(redisKey), String.valueOf(delta), ttl) == null) {
+                    // New month or lost counter — start from the durable count, then add
+                    restoreIfMissing(redisKey, storedUsage(key.tenantId(), key.period()), key.period());
+                    redisTemplate.execute(incrIfExistsScript, List.of(redisKey), String.valueOf(delta), ttl);
+                }
+            } catch (RuntimeException e) {
+                // Keep it for the next flush — enforcement on this node still counts it
+                shard.pending.add(delta);
+                log.warn("QuotaService: Failed to flush {} requests for tenant {}: {}",
+                        delta, key.tenantId(), e.getMessage());
+            } finally {
+                shard.flushing.addAndGet(-delta);
+            }
+        }
+    }
+
+    /** Copy Redis counters into tenant_usage; restore counters Redis has lost. */
+    @Scheduled(fixedDelayString = "${notifly.quota.reconcile-interval-ms:300000}",
+               initialDelayString = "${notifly.quota.reconcile-initial-delay-ms:60000}")
+    public void reconcile() {
+        YearMonth current = currentPeriod();
+        int reconciled = reconcile(current.minusMonths(1)) + reconcile(current);
+        log.info("QuotaService: Reconciled usage for {} tenant-months", reconciled);
+    }
+
+    private int reconcile(YearMonth period) {
+        Map<UUID, Long> stored = new LinkedHashMap<>();
+        for (TenantUsage usage : tenantUsageRepository.findByPeriodStart(period.atDay(1))) {
+            stored.put(usage.getTenantId(), usage.getRequestCount());
+        }
+
+        Set<UUID> tenants = new HashSet<>(stored.keySet());
+        ScanOptions scan = ScanOptions.scanOptions().match("quota:*:" + period).count(1000).build();
+        try (Cursor<String> cursor = redisTemplate.scan(scan)) {
+            cursor.forEachRemaining(key -> {
+                try {
+                    tenants.add(UUID.fromString(key.substring("quota:".length(), key.lastIndexOf(':'))));
+                } catch (IllegalArgumentException e) {
+                    log.debug("QuotaService: Skipping unexpected key {}", key);
+                }
+            });
+        }
+
+        int count = 0;
+        for (UUID tenantId : tenants) {
+            String redisKey = counterKey(tenantId, period);
+            String value = redisTemplate.opsForValue().get(redisKey);
+            long inRedis = value != null ? Long.parseLong(value) : 0L;
+            long inDb = stored.getOrDefault(tenantId, 0L);
+
+            if (value == null) {
+                // Counter lost (eviction, failover) — put the durable count back.
+                // A lower value that exists is not a loss: refunds lower it.
+                if (restoreIfMissing(redisKey, inDb, period)) {
+                    log.warn("QuotaService: Restored quota counter for tenant {} {}: {}", tenantId, period, inDb);
+                }
+            } else if (inRedis > inDb) {
+                tenantUsageRepository.upsertUsage(tenantId, period.atDay(1), inRedis);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /** SET NX — a no-op if another node (or a flush) has already recreated the key. */
+    private boolean restoreIfMissing(String redisKey, long value, YearMonth period) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(
+                redisKey, String.valueOf(value), ttlFor(period), TimeUnit.MILLISECONDS));
+    }
+
+    private long storedUsage(UUID tenantId, YearMonth period) {
+        return tenantUsageRepository.findByTenantIdAndPeriodStart(tenantId, period.atDay(1))
+                .map(TenantUsage::getRequestCount)
+                .orElse(0L);
+    }
+
+    /** Counters outlive their month by a week so late flushes and reconciliation still see them. */
+    private static long ttlFor(YearMonth period) {
+        long end = period.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        return Math.max(0L, end - System.currentTimeMillis()) + Duration.ofDays(7).toMillis();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
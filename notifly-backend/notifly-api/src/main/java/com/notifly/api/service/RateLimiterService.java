@@ -1,35 +1,64 @@
 package com.notifly.api.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.notifly.common.domain.entity.RateLimitConfig;
 import com.notifly.common.domain.repository.RateLimitConfigRepository;
 import com.notifly.common.exception.RateLimitException;
+import com.notifly.common.exception.ValidationException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
 
 /**
- * Sliding window rate limiter backed by Redis.
+ * Two-tier rate limiter: local token buckets backed by quota leased from Redis.
  *
  * FIXES from original:
  *  1. Race condition: multiple Redis operations (ZREMRANGEBYSCORE, ZCARD, ZADD, EXPIRE)
  *     were non-atomic. Two concurrent requests could both pass the limit check.
  *     Fixed with a single atomic Lua script — all operations execute as one unit in Redis.
  *  2. Added per-API-key granularity in the Redis key (was just per-tenant).
- *  3. Correctly calculates retryAfter seconds from the sliding window.
+ *  3. retryAfter is the exact time until enough permits are available (was a flat 60s).
+ *
+ *  4. Local leasing:
+ *     Every request used to cost a rate_limit_config query plus a Lua round trip.
+ *     Now RateLimitConfig is cached in-process (notifly.rate-limit.config-cache-seconds)
+ *     and each node hands out permits from an in-memory bucket per (tenant, API key),
+ *     going to Redis only when the bucket is empty to lease a block of permits.
+ *     Leased permits are only usable for notifly.rate-limit.lease-ttl-ms, so a
+ *     node cannot hoard them into a later burst. Most requests cost no network I/O.
+ *
+ *  5. GCRA (generic cell rate algorithm) in Redis:
+ *     The sliding-window ZSET stored one member per request and ignored
+ *     burstLimit and requestsPerHour. The script now keeps one theoretical
+ *     arrival time (TAT) per limit in a single hash — O(1) memory per key —
+ *     and enforces, in one atomic call:
+ *       minute cell — sustained requestsPerMinute, bursts up to burstLimit;
+ *       hour cell   — sustained requestsPerHour, bursts up to requestsPerHour.
+ *     It grants as many permits as every cell allows (up to the lease size)
+ *     and, when it cannot grant the minimum, returns the exact wait in ms.
+ *     Time comes from Redis (TIME), so API nodes with skewed clocks agree.
+ *
+ *  6. The Redis call itself now lives in AdmissionService, which runs the
+ *     GCRA functions below together with the quota and idempotency checks in
+ *     one script. This class owns the local tier: reserve() → script → settle()
+ *     or refund().
  */
 @Slf4j
 @Service
 public class RateLimiterService {
 
-    private final RedisTemplate<String, String> redisTemplate;
+    private static final long MINUTE_MS = 60_000L;
+    private static final long HOUR_MS = 3_600_000L;
+
     private final RateLimitConfigRepository rateLimitConfigRepository;
-    private final DefaultRedisScript<Long> rateLimitScript;
+    private final Cache<UUID, RateLimitConfig> configs;
+    private final Cache<String, LocalBucket> buckets;
 
     @Value("${notifly.rate-limit.default-requests-per-minute:60}")
     private Integer defaultRequestsPerMinute;
@@ -37,87 +66,189 @@ public class RateLimiterService {
     @Value("${notifly.rate-limit.default-burst-limit:100}")
     private Integer defaultBurstLimit;
 
+    @Value("${notifly.rate-limit.lease-size:10}")
+    private int leaseSize;
+
+    @Value("${notifly.rate-limit.lease-ttl-ms:1000}")
+    private long leaseTtlMs;
+
     /**
-     * Atomic Lua script for sliding window rate limiting.
-     *
-     * KEYS[1] = Redis key (e.g., "rate_limit:tenantId:apiKeyId")
-     * ARGV[1] = window size in milliseconds (60000 for 1 minute)
-     * ARGV[2] = max requests per window
-     * ARGV[3] = current timestamp in milliseconds
+     * GCRA over two cells stored in one hash, as Lua functions so the
+     * admission script (AdmissionService) can plan the rate check, run its
+     * other checks, and only then commit — all in the same atomic call.
      *
-     * Returns: 1 = allowed, 0 = rate limit exceeded
+     * gcra_plan(key, now, wanted, minimum, cells) → grant, waitMs, tats
+     *   grant is 0 if fewer than `minimum` permits are available in every
+     *   cell; waitMs is then the exact time until they are.
+     * gcra_commit(key, now, grant, tats, cells) advances each cell's TAT.
      *
-     * All operations are atomic — no race condition possible.
+     * cells = { {'m', 60000 / requestsPerMinute, burstLimit},
+     *           {'h', 3600000 / requestsPerHour, requestsPerHour} }
      */
-    private static final String SLIDING_WINDOW_LUA =
-        "local key        = KEYS[1]\n" +
-        "local window_ms  = tonumber(ARGV[1])\n" +
-        "local limit      = tonumber(ARGV[2])\n" +
-        "local now        = tonumber(ARGV[3])\n" +
-        "local window_start = now - window_ms\n" +
-        // Remove entries outside the window
-        "redis.call('ZREMRANGEBYSCORE', key, 0, window_start)\n" +
-        // Count current entries in window
-        "local count = redis.call('ZCARD', key)\n" +
-        // Reject if limit exceeded
-        "if count >= limit then\n" +
-        "  return 0\n" +
+    static final String GCRA_FUNCTIONS =
+        "local function gcra_plan(key, now, wanted, minimum, cells)\n" +
+        "  local tats  = {}\n" +
+        "  local grant = wanted\n" +
+        "  for i, c in ipairs(cells) do\n" +
+        "    local tat = tonumber(redis.call('HGET', key, c[1]) or now)\n" +
+        "    if tat < now then tat = now end\n" +
+        "    tats[i] = tat\n" +
+        // Permits that fit before the TAT would run more than `capacity` intervals ahead
+        "    local available = math.floor((now + c[3] * c[2] - tat) / c[2])\n" +
+        "    if available < grant then grant = available end\n" +
+        "  end\n" +
+        "  if grant >= minimum then\n" +
+        "    return grant, 0, tats\n" +
+        "  end\n" +
+        "  local wait = 0\n" +
+        "  for i, c in ipairs(cells) do\n" +
+        "    local w = tats[i] + (minimum - c[3]) * c[2] - now\n" +
+        "    if w > wait then wait = w end\n" +
+        "  end\n" +
+        "  return 0, math.ceil(wait), tats\n" +
         "end\n" +
-        // Add this request with unique member (now + random suffix avoids collisions)
-        "redis.call('ZADD', key, now, now .. ':' .. math.random(1, 999999))\n" +
-        // Set key TTL to window size + 1 second buffer
-        "redis.call('PEXPIRE', key, window_ms + 1000)\n" +
-        "return 1";
+        "local function gcra_commit(key, now, grant, tats, cells)\n" +
+        "  local ttl = 0\n" +
+        "  for i, c in ipairs(cells) do\n" +
+        "    local tat = tats[i] + grant * c[2]\n" +
+        "    redis.call('HSET', key, c[1], string.format('%.3f', tat))\n" +
+        "    if tat - now > ttl then ttl = tat - now end\n" +
+        "  end\n" +
+        "  redis.call('PEXPIRE', key, math.ceil(ttl) + 1000)\n" +
+        "end\n";
+
+    /** Permits this node holds for one (tenant, API key), usable until expiresAt. */
+    private static final class LocalBucket {
+        long expiresAt;
+        int remaining;
+    }
+
+    /**
+     * What the local tier could not cover for one admission. {@code wanted}
+     * is 0 when the local bucket covered everything and Redis need not be
+     * asked for permits at all.
+     */
+    public static final class Reservation {
+        private final LocalBucket bucket;
+        private final int takenLocally;
+        private final int shortfall;
+        final String key;
+        final int wanted;
+        final RateLimitConfig config;
+
+        private Reservation(LocalBucket bucket, int takenLocally, int shortfall, String key,
+                            int wanted, RateLimitConfig config) {
+            this.bucket = bucket;
+            this.takenLocally = takenLocally;
+            this.shortfall = shortfall;
+            this.key = key;
+            this.wanted = wanted;
+            this.config = config;
+        }
+
+        /** Lua ARGV for gcra_plan: wanted, minimum, then the two cells. */
+        List<String> scriptArgs() {
+            int perMinute = Math.max(1, config.getRequestsPerMinute());
+            int perHour = Math.max(1, config.getRequestsPerHour());
+            return List.of(
+                String.valueOf(wanted),
+                String.valueOf(shortfall),
+                String.valueOf((double) MINUTE_MS / perMinute),
+                String.valueOf(Math.max(1, config.getBurstLimit())),
+                String.valueOf((double) HOUR_MS / perHour),
+                String.valueOf(perHour));
+        }
+    }
 
     @Autowired
-    public RateLimiterService(RedisTemplate<String, String> redisTemplate,
-                               RateLimitConfigRepository rateLimitConfigRepository) {
-        this.redisTemplate = redisTemplate;
+    public RateLimiterService(RateLimitConfigRepository rateLimitConfigRepository,
+                               @Value("${notifly.rate-limit.config-cache-seconds:60}") long configCacheSeconds) {
         this.rateLimitConfigRepository = rateLimitConfigRepository;
 
-        // Pre-compile the Lua script
-        this.rateLimitScript = new DefaultRedisScript<>();
-        this.rateLimitScript.setScriptText(SLIDING_WINDOW_LUA);
-        this.rateLimitScript.setResultType(Long.class);
+        this.configs = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(configCacheSeconds))
+                .maximumSize(10_000)
+                .build();
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(2))
+                .build();
     }
 
     /**
-     * Check rate limit for a tenant + API key combination.
-     * Throws RateLimitException if the limit is exceeded.
-     *
-     * FIXED: Uses atomic Lua script — no more race condition under concurrency.
+     * Take what the local bucket holds for {@code permits} and work out the
+     * lease (shortfall + prefetch) the admission script must request.
      */
-    public void checkRateLimit(UUID tenantId, String apiKeyId) throws RateLimitException {
-        RateLimitConfig config = rateLimitConfigRepository.findByTenantId(tenantId)
-                .orElse(RateLimitConfig.builder()
-                        .requestsPerMinute(defaultRequestsPerMinute)
-                        .burstLimit(defaultBurstLimit)
-                        .build());
+    public Reservation reserve(UUID tenantId, String apiKeyId, int permits) {
+        RateLimitConfig config = configFor(tenantId);
+        int capacity = Math.min(Math.max(1, config.getBurstLimit()), Math.max(1, config.getRequestsPerHour()));
 
         String key = "rate_limit:" + tenantId + ":" + apiKeyId;
-        long now = System.currentTimeMillis();
-        long windowMs = 60_000L; // 1 minute sliding window
-
-        // FIXED: Single atomic Lua script replaces 4 separate non-atomic Redis calls
-        Long result = redisTemplate.execute(
-            rateLimitScript,
-            Collections.singletonList(key),
-            String.valueOf(windowMs),
-            String.valueOf(config.getRequestsPerMinute()),
-            String.valueOf(now)
-        );
+        LocalBucket bucket = buckets.get(key, k -> new LocalBucket());
+
+        synchronized (bucket) {
+            if (System.currentTimeMillis() >= bucket.expiresAt) {
+                bucket.remaining = 0;
+            }
+            int taken = Math.min(bucket.remaining, permits);
+            int shortfall = permits - taken;
+            if (shortfall > capacity) {
+                // Could never be granted — waiting would not help, so this is not a 429
+                throw new ValidationException(String.format(
+                    "Request needs %d permits but the burst limit is %d.", permits, capacity));
+            }
+            bucket.remaining -= taken;
+
+            // Prefetch at most a tenth of the burst so small tenants are not
+            // stranded with their whole allowance leased to one node
+            int wanted = shortfall == 0 ? 0
+                    : shortfall + Math.min(leaseSize, Math.max(1, config.getBurstLimit() / 10));
+            return new Reservation(bucket, taken, shortfall, key, wanted, config);
+        }
+    }
 
-        if (result == null || result == 0L) {
-            long retryAfter = 60L; // Conservative: retry after 60 seconds
-            log.warn("Rate limit exceeded for tenant={}, apiKey={}, limit={}/min",
-                    tenantId, apiKeyId, config.getRequestsPerMinute());
-            throw new RateLimitException(
-                String.format("Rate limit exceeded. Max %d requests per minute. Retry after %d seconds.",
-                    config.getRequestsPerMinute(), retryAfter),
-                retryAfter
-            );
+    /** Credit permits granted by Redis beyond what this admission needed. */
+    public void settle(Reservation reservation, long granted) {
+        if (reservation.wanted == 0) {
+            return;
+        }
+        LocalBucket bucket = reservation.bucket;
+        synchronized (bucket) {
+            if (bucket.remaining == 0) {
+                bucket.expiresAt = System.currentTimeMillis() + leaseTtlMs;
+            }
+            bucket.remaining += (int) granted - reservation.shortfall;
         }
+    }
 
-        log.debug("Rate limit check passed for tenant={}: limit={}/min", tenantId, config.getRequestsPerMinute());
+    /** Admission rejected for another reason — give back what was taken locally. */
+    public void refund(Reservation reservation) {
+        if (reservation.takenLocally == 0) {
+            return;
+        }
+        synchronized (reservation.bucket) {
+            reservation.bucket.remaining += reservation.takenLocally;
+        }
+    }
+
+    public RateLimitException exceeded(UUID tenantId, Reservation reservation, long retryAfterMs) {
+        RateLimitConfig config = reservation.config;
+        long retryAfter = Math.max(1L, (retryAfterMs + 999) / 1000);
+        log.warn("Rate limit exceeded for tenant={}, key={}, limit={}/min burst={} {}/h",
+                tenantId, reservation.key, config.getRequestsPerMinute(), config.getBurstLimit(),
+                config.getRequestsPerHour());
+        return new RateLimitException(
+            String.format("Rate limit exceeded. Max %d requests per minute (burst %d, %d per hour). "
+                    + "Retry after %d seconds.", config.getRequestsPerMinute(), config.getBurstLimit(),
+                    config.getRequestsPerHour(), retryAfter),
+            retryAfter
+        );
+    }
+
+    private RateLimitConfig configFor(UUID tenantId) {
+        return configs.get(tenantId, id -> rateLimitConfigRepository.findByTenantId(id)
+                .orElse(RateLimitConfig.builder()
+                        .requestsPerMinute(defaultRequestsPerMinute)
+                        .burstLimit(defaultBurstLimit)
+                        .build()));
     }
 }
@@ -11,6 +11,7 @@ import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * JWT utility for creating and validating tokens.
@@ -21,6 +22,9 @@ import java.util.Map;
  *  2. Short secrets were silently padded with zeros — predictable in adversarial scenarios.
  *     Now throws at startup if secret < 32 chars (fails fast, not silently insecure).
  *  3. Added token_type validation to prevent access tokens from being used as refresh tokens.
+ *  4. verify() checks the signature once and returns every claim callers need.
+ *     JwtAuthFilter used to call validateToken + three getters, i.e. four
+ *     full parse-and-verify passes per dashboard request.
  */
 @Slf4j
 @Component
@@ -90,38 +94,40 @@ public class JwtUtil {
                 .compact();
     }
 
-    public boolean validateToken(String token) {
+    /** Claims of a token whose signature and expiry have been verified. */
+    public record JwtClaims(String userId, String tenantId, String role, String tokenType, Date expiration) {
+
+        public boolean isAccessToken() {
+            return "access".equals(tokenType);
+        }
+
+        public boolean isRefreshToken() {
+            return "refresh".equals(tokenType);
+        }
+    }
+
+    /**
+     * Verify the token and decode its claims in a single pass.
+     *
+     * @return empty if the token is expired, malformed or badly signed
+     */
+    public Optional<JwtClaims> verify(String token) {
         try {
-            Jwts.parser().verifyWith(signingKey).build().parseSignedClaims(token);
-            return true;
+            Claims claims = parseClaims(token);
+            return Optional.of(new JwtClaims(
+                    claims.getSubject(),
+                    claims.get("tenant_id", String.class),
+                    claims.get("role", String.class),
+                    claims.get("token_type", String.class),
+                    claims.getExpiration()));
         } catch (ExpiredJwtException e) {
             log.debug("JWT expired: {}", e.getMessage());
         } catch (MalformedJwtException e) {
             log.warn("Malformed JWT: {}", e.getMessage());
-        } catch (JwtException e) {
+        } catch (JwtException | IllegalArgumentException e) {
             log.warn("JWT validation error: {}", e.getMessage());
         }
-        return false;
-    }
-
-    public String getUserIdFromToken(String token) {
-        return parseClaims(token).getSubject();
-    }
-
-    public String getTenantIdFromToken(String token) {
-        return (String) parseClaims(token).get("tenant_id");
-    }
-
-    public String getRoleFromToken(String token) {
-        return (String) parseClaims(token).get("role");
-    }
-
-    public String getTokenType(String token) {
-        return (String) parseClaims(token).get("token_type");
-    }
-
-    public Date getExpirationFromToken(String token) {
-        return parseClaims(token).getExpiration();
+        return Optional.empty();
     }
 
     private Claims parseClaims(String token) {
@@ -6,6 +6,8 @@ package com.notifly.common.config;
  */
 public class KafkaTopics {
     public static final String NOTIFICATION_EVENTS = "notification.events";
+    // High-priority lane (OTPs, password resets) — own consumer group, never behind NOTIFICATION_EVENTS lag
+    public static final String NOTIFICATION_EVENTS_PRIORITY = "notification.events.priority";
     public static final String NOTIFICATION_RETRY_1S = "notification.retry.1s";
     public static final String NOTIFICATION_RETRY_5S = "notification.retry.5s";
     public static final String NOTIFICATION_RETRY_30S = "notification.retry.30s";
@@ -0,0 +1,23 @@
+package com.notifly.common.config;
+
+/**
+ * Redis pub/sub channel names shared by the API and worker nodes.
+ * Messages on these channels are invalidation hints only — every consumer
+ * must tolerate missing a message (local caches are TTL-bounded).
+ */
+public class RedisChannels {
+    /** Payload: the revoked API key id (UUID string). */
+    public static final String API_KEY_REVOCATIONS = "notifly:apikey:revoked";
+
+    /** Payload: JSON {@link com.notifly.common.dto.ConfigChangeEvent}. */
+    public static final String CONFIG_CHANGES = "notifly:config:changed";
+
+    /** Payload: the admin user id (UUID string) whose active flag or role changed. */
+    public static final String USER_STATUS_CHANGES = "notifly:user:status-changed";
+
+    /**
+     * Payload: the hex filter hash of a newly suppressed (tenant, channel, recipient) —
+     * never the recipient itself, so no addresses travel over pub/sub.
+     */
+    public static final String SUPPRESSIONS = "notifly:suppression:added";
+}
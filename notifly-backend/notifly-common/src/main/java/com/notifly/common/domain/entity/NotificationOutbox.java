@@ -41,6 +41,10 @@ public class NotificationOutbox {
     @Column(name = "retry_count")
     private Integer retryCount;
 
+    // ADDED: NotificationPriority level — claimPending publishes higher levels first
+    @Column(name = "priority", nullable = false)
+    private Integer priority;
+
     @Column(name = "last_error", columnDefinition = "TEXT")
     private String lastError;
 
@@ -66,6 +70,9 @@ public class NotificationOutbox {
         if (this.retryCount == null) {
             this.retryCount = 0;
         }
+        if (this.priority == null) {
+            this.priority = 0;
+        }
         this.updatedAt = Instant.now();
     }
 
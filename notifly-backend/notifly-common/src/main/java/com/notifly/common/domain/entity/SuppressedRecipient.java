@@ -0,0 +1,77 @@
+package com.notifly.common.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * A recipient the provider permanently rejected for one tenant and channel.
+ * The worker skips it instead of paying for another provider round trip.
+ */
+@Entity
+@Table(name = "suppressed_recipients",
+        uniqueConstraints = {
+                @UniqueConstraint(columnNames = {"tenant_id", "channel", "recipient"})
+        })
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuppressedRecipient {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "tenant_id", nullable = false)
+    private UUID tenantId;
+
+    @Column(nullable = false, length = 20)
+    private String channel;
+
+    /** Normalized with {@link #normalize}. */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String recipient;
+
+    @Column(name = "reason_code", length = 100)
+    private String reasonCode;
+
+    @Column(columnDefinition = "TEXT")
+    private String reason;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @PrePersist
+    public void prePersist() {
+        if (this.id == null) {
+            this.id = UUID.randomUUID();
+        }
+    }
+
+    /** Redis set of suppressed recipients for one tenant and channel. */
+    public static String redisKey(UUID tenantId, String channel) {
+        return "suppression:" + tenantId + ":" + channel;
+    }
+
+    /** Emails are case-insensitive in practice; tokens and E.164 numbers are compared verbatim. */
+    public static String normalize(String channel, String recipient) {
+        if (recipient == null) {
+            return null;
+        }
+        String trimmed = recipient.trim();
+        return "EMAIL".equals(channel) ? trimmed.toLowerCase(Locale.ROOT) : trimmed;
+    }
+}
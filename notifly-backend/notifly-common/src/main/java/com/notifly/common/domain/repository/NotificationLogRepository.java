@@ -9,6 +9,7 @@ import org.springframework.stereotype.Repository;
 
 import com.notifly.common.domain.entity.NotificationLog;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -22,6 +23,19 @@ public interface NotificationLogRepository extends JpaRepository<NotificationLog
     boolean existsByTenantIdAndRequestIdAndChannelAndStatus(
             UUID tenantId, UUID requestId, String channel, String status);
 
+    /**
+     * Batch dedupe check for the worker's batch listener — one round trip for a
+     * whole poll instead of one exists-query per record and channel.
+     *
+     * Row layout: [0] tenantId (UUID), [1] requestId (UUID), [2] channel (String)
+     */
+    @Query("""
+            SELECT DISTINCT n.tenantId, n.requestId, n.channel
+            FROM NotificationLog n
+            WHERE n.status = 'SENT' AND n.requestId IN :requestIds
+            """)
+    List<Object[]> findSentDeliveries(@Param("requestIds") Collection<UUID> requestIds);
+
     Optional<NotificationLog> findByIdAndTenantId(UUID id, UUID tenantId);
 
     List<NotificationLog> findByTenantIdAndRequestId(UUID tenantId, UUID requestId);
@@ -1,11 +1,15 @@
 package com.notifly.common.domain.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.notifly.common.domain.entity.NotificationOutbox;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -25,4 +29,88 @@ public interface NotificationOutboxRepository extends JpaRepository<Notification
     // Entries at or above maxRetryCount are permanently failed and left alone.
     @Query("SELECT no FROM NotificationOutbox no WHERE no.status = ?1 AND no.retryCount < ?2 ORDER BY no.createdAt ASC LIMIT ?3")
     List<NotificationOutbox> findFailedForRecovery(NotificationOutbox.OutboxStatus status, int maxRetryCount, int limit);
-}
\ No newline at end of file
+
+    // ADDED: Used by OutboxPublisher.publishPendingEvents() — claims the next batch in
+    // one statement. SKIP LOCKED lets several API instances claim disjoint batches
+    // concurrently instead of blocking on (or double-sending) each other's rows.
+    // graceMs > 0 (WAL relay mode) leaves fresh rows to the relay.
+    // Higher priority first, so HIGH rows never wait behind a NORMAL backlog.
+    @Transactional
+    @Query(value = """
+            UPDATE notification_outbox o
+               SET status = 'PROCESSING', updated_at = now()
+             WHERE o.id IN (
+                   SELECT id FROM notification_outbox
+                    WHERE status = 'PENDING'
+                      AND created_at <= now() - (:graceMs * interval '1 millisecond')
+                    ORDER BY priority DESC, created_at
+                    LIMIT :limit
+                      FOR UPDATE SKIP LOCKED)
+            RETURNING o.*
+            """, nativeQuery = true)
+    List<NotificationOutbox> claimPending(int limit, long graceMs);
+
+    // ADDED: Used by OutboxWalRelay — claims specific rows seen in the WAL, skipping
+    // any the poller (or a previous relay run) already took
+    @Transactional
+    @Query(value = """
+            UPDATE notification_outbox o
+               SET status = 'PROCESSING', updated_at = now()
+             WHERE o.id IN (:ids) AND o.status = 'PENDING'
+            RETURNING o.*
+            """, nativeQuery = true)
+    List<NotificationOutbox> claimByIds(Collection<UUID> ids);
+
+    // ADDED: bulk status transitions — one UPDATE per batch instead of findById + save per row
+    @Modifying
+    @Query(value = """
+            UPDATE notification_outbox
+               SET status = 'SENT', sent_at = :sentAt, updated_at = :sentAt,
+                   retry_count = COALESCE(retry_count, 0) + 1
+             WHERE id IN (:ids)
+            """, nativeQuery = true)
+    int markSent(Collection<UUID> ids, Instant sentAt);
+
+    @Modifying
+    @Query(value = """
+            UPDATE notification_outbox
+               SET status = 'FAILED', last_error = :error, updated_at = now(),
+                   retry_count = COALESCE(retry_count, 0) + 1
+             WHERE id IN (:ids)
+            """, nativeQuery = true)
+    int markFailed(Collection<UUID> ids, String error);
+
+    // ADDED: Used by OutboxPublisher.recoverFailedEvents() — bulk variant of findFailedForRecovery
+    @Modifying
+    @Query(value = """
+            UPDATE notification_outbox
+               SET status = 'PENDING', updated_at = now()
+             WHERE id IN (
+                   SELECT id FROM notification_outbox
+                    WHERE status = 'FAILED' AND retry_count < :maxRetryCount
+                    ORDER BY created_at
+                    LIMIT :limit
+                      FOR UPDATE SKIP LOCKED)
+            """, nativeQuery = true)
+    int resetFailedForRecovery(int maxRetryCount, int limit);
+
+    // ADDED: rows left PROCESSING by an instance that died between claim and completion
+    @Modifying
+    @Query(value = """
+            UPDATE notification_outbox
+               SET status = 'PENDING', updated_at = now()
+             WHERE status = 'PROCESSING' AND updated_at < :claimedBefore
+            """, nativeQuery = true)
+    int resetStaleProcessing(Instant claimedBefore);
+
+    // ADDED: backlog gauges (BacklogMetrics) — PENDING rows and the age of the oldest, in seconds
+    @Query(value = "SELECT count(*) FROM notification_outbox WHERE status = 'PENDING'", nativeQuery = true)
+    long countPending();
+
+    @Query(value = """
+            SELECT COALESCE(EXTRACT(EPOCH FROM (now() - min(created_at))), 0)
+              FROM notification_outbox
+             WHERE status = 'PENDING'
+            """, nativeQuery = true)
+    double oldestPendingAgeSeconds();
+}
@@ -6,6 +6,8 @@ import org.springframework.stereotype.Repository;
 
 import com.notifly.common.domain.entity.NotificationRequest;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -17,4 +19,16 @@ public interface NotificationRequestRepository extends JpaRepository<Notificatio
 
     @Query("SELECT nr FROM NotificationRequest nr WHERE nr.tenantId = ?1 AND nr.idempotencyKey = ?2")
     Optional<NotificationRequest> findByTenantIdAndIdempotencyKey(UUID tenantId, String idempotencyKey);
+
+    // ADDED: Used by BatchNotificationService — idempotency check for a whole batch in one query
+    @Query("SELECT nr FROM NotificationRequest nr WHERE nr.tenantId = :tenantId AND nr.requestId IN :requestIds")
+    List<NotificationRequest> findByTenantIdAndRequestIdIn(UUID tenantId, Collection<UUID> requestIds);
+
+    @Query("""
+            SELECT nr FROM NotificationRequest nr
+            WHERE nr.tenantId = :tenantId
+              AND (nr.requestId IN :requestIds OR nr.idempotencyKey IN :idempotencyKeys)
+            """)
+    List<NotificationRequest> findExistingForBatch(UUID tenantId, Collection<UUID> requestIds,
+                                                   Collection<String> idempotencyKeys);
 }
@@ -0,0 +1,58 @@
+package com.notifly.common.domain.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.notifly.common.domain.entity.SuppressedRecipient;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface SuppressedRecipientRepository extends JpaRepository<SuppressedRecipient, UUID> {
+
+    /** Just what the worker's filter rebuild needs. */
+    interface SuppressionKey {
+        UUID getId();
+        UUID getTenantId();
+        String getChannel();
+        String getRecipient();
+    }
+
+    Page<SuppressedRecipient> findByTenantIdOrderByCreatedAtDesc(UUID tenantId, Pageable pageable);
+
+    Page<SuppressedRecipient> findByTenantIdAndChannelOrderByCreatedAtDesc(
+            UUID tenantId, String channel, Pageable pageable);
+
+    Optional<SuppressedRecipient> findByIdAndTenantId(UUID id, UUID tenantId);
+
+    /**
+     * Suppress a recipient; a no-op if it already is, so concurrent workers
+     * hitting the same dead address never fail on the unique constraint.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO suppressed_recipients (id, tenant_id, channel, recipient, reason_code, reason,
+                                               created_at, updated_at)
+            VALUES (uuid_generate_v4(), :tenantId, :channel, :recipient, :reasonCode, :reason, now(), now())
+            ON CONFLICT (tenant_id, channel, recipient) DO NOTHING
+            """, nativeQuery = true)
+    int insertIgnore(UUID tenantId, String channel, String recipient, String reasonCode, String reason);
+
+    /** Keyset page over every tenant's entries, in id order. */
+    @Query(value = """
+            SELECT id, tenant_id AS "tenantId", channel, recipient
+              FROM suppressed_recipients
+             WHERE id > :afterId
+             ORDER BY id
+             LIMIT :limit
+            """, nativeQuery = true)
+    List<SuppressionKey> findKeysAfter(UUID afterId, int limit);
+}
@@ -0,0 +1,37 @@
+package com.notifly.common.domain.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.notifly.common.domain.entity.TenantUsage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface TenantUsageRepository extends JpaRepository<TenantUsage, UUID> {
+
+    Optional<TenantUsage> findByTenantIdAndPeriodStart(UUID tenantId, LocalDate periodStart);
+
+    List<TenantUsage> findByPeriodStart(LocalDate periodStart);
+
+    /**
+     * Record the reconciled count. Never lowers a stored value, so a Redis
+     * counter that was lost and restarted at zero cannot erase usage.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO tenant_usage (id, tenant_id, period_start, request_count, created_at, updated_at)
+            VALUES (uuid_generate_v4(), :tenantId, :periodStart, :requestCount, now(), now())
+            ON CONFLICT (tenant_id, period_start) DO UPDATE
+               SET request_count = GREATEST(tenant_usage.request_count, EXCLUDED.request_count),
+                   updated_at    = now()
+            """, nativeQuery = true)
+    int upsertUsage(UUID tenantId, LocalDate periodStart, long requestCount);
+}
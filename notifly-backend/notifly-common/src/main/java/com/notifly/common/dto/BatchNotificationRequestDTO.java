@@ -0,0 +1,43 @@
+package com.notifly.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request DTO for POST /api/v1/notifications/batch.
+ *
+ * Each item is a regular NotificationRequestDTO plus an optional per-item
+ * idempotency key (the single endpoint takes it from the Idempotency-Key header):
+ *
+ *   {"notifications": [
+ *     {"idempotency_key": "order-123", "event_type": "ORDER_SHIPPED", "channels": ["EMAIL"], ...},
+ *     ...
+ *   ]}
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchNotificationRequestDTO {
+
+    @JsonProperty("notifications")
+    private List<Item> notifications;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        @JsonProperty("idempotency_key")
+        private String idempotencyKey;
+
+        @JsonUnwrapped
+        private NotificationRequestDTO notification;
+    }
+}
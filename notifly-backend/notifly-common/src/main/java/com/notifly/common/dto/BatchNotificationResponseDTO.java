@@ -0,0 +1,37 @@
+package com.notifly.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Response DTO for POST /api/v1/notifications/batch — one result per submitted
+ * item, in request order.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchNotificationResponseDTO {
+    private String correlationId;
+    private int accepted;
+    private int duplicates;
+    private int rejected;
+    private List<ItemResult> results;
+
+    public enum ItemStatus { ACCEPTED, DUPLICATE, REJECTED }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        private int index;
+        private String requestId;
+        private ItemStatus status;
+        private String message;
+    }
+}
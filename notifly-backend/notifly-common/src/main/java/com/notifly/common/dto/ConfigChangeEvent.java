@@ -0,0 +1,32 @@
+package com.notifly.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Published by the API on RedisChannels.CONFIG_CHANGES whenever delivery
+ * configuration changes, so workers can evict their local copies.
+ *
+ * TEMPLATE       → tenantId + channel (null channel = every channel of the tenant)
+ * CHANNEL_POLICY → tenantId + eventType
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConfigChangeEvent {
+
+    public enum Type {
+        TEMPLATE,
+        CHANNEL_POLICY
+    }
+
+    private Type type;
+    private UUID tenantId;
+    private String eventType;
+    private String channel;
+}
@@ -1,5 +1,7 @@
 package com.notifly.common.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.notifly.common.enums.NotificationPriority;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -32,6 +34,11 @@ public class KafkaNotificationEvent {
     // Callers populate this when submitting a notification via the API.
     private Map<String, Object> payload;
 
+    // ADDED: Delivery lane; null = NORMAL. HIGH events are published to
+    // notification.events.priority and get first claim on provider slots.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private NotificationPriority priority;
+
     private String correlationId;
     private int retryCount;
     private long createdAt;
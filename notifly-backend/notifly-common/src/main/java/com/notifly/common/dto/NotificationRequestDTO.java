@@ -4,7 +4,9 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.notifly.common.enums.NotificationPriority;
 
 import java.util.List;
 import java.util.Map;
@@ -43,5 +45,12 @@ public class NotificationRequestDTO {
 
     @JsonProperty("metadata")
     private Map<String, String> metadata; // Custom metadata
+
+    // ADDED: "high" routes OTPs / password resets through the priority lane.
+    // Omitted from the serialized payload when absent so payload hashes of
+    // requests without it are unchanged.
+    @JsonProperty("priority")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private NotificationPriority priority; // "normal" (default) | "high"
 }
 
@@ -0,0 +1,52 @@
+package com.notifly.common.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Delivery lane of a notification. HIGH (OTPs, password resets) is published
+ * to KafkaTopics.NOTIFICATION_EVENTS_PRIORITY and consumed by its own worker
+ * listener, so it never queues behind NORMAL traffic. Absent means NORMAL.
+ */
+public enum NotificationPriority {
+    NORMAL(0),
+    HIGH(1);
+
+    /** Stored in notification_outbox.priority; higher is published first. */
+    private final int level;
+
+    NotificationPriority(int level) {
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @JsonValue
+    public String getCode() {
+        return name().toLowerCase();
+    }
+
+    @JsonCreator
+    public static NotificationPriority fromCode(String code) {
+        if (code == null || code.isBlank()) {
+            return NORMAL;
+        }
+        for (NotificationPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(code)) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority: " + code);
+    }
+
+    /** Null-safe: true only for HIGH. */
+    public static boolean isHigh(NotificationPriority priority) {
+        return priority == HIGH;
+    }
+
+    public static int levelOf(NotificationPriority priority) {
+        return priority == null ? NORMAL.level : priority.level;
+    }
+}
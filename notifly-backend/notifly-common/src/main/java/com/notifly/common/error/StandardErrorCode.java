@@ -5,6 +5,7 @@ public enum StandardErrorCode {
     TENANT_MISMATCH("TENANT_MISMATCH"),
     INVALID_API_KEY("INVALID_API_KEY"),
     RATE_LIMIT_EXCEEDED("RATE_LIMIT_EXCEEDED"),
+    QUOTA_EXCEEDED("QUOTA_EXCEEDED"),
     IDEMPOTENCY_CONFLICT("IDEMPOTENCY_CONFLICT"),
     INVALID_REQUEST("INVALID_REQUEST"),
     TEMPLATE_NOT_FOUND("TEMPLATE_NOT_FOUND"),
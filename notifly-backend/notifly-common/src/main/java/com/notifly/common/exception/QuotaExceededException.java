@@ -0,0 +1,20 @@
+package com.notifly.common.exception;
+
+/**
+ * Thrown when a tenant has used its monthly request allowance
+ * (Tenant.monthlyRequestLimit).
+ * Maps to HTTP 429 Too Many Requests, Retry-After = start of the next month.
+ */
+public class QuotaExceededException extends NotiflyException {
+
+    private final long retryAfterSeconds;
+
+    public QuotaExceededException(String message, long retryAfterSeconds) {
+        super("QUOTA_EXCEEDED", message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,35 @@
+package com.notifly.common.metrics;
+
+/**
+ * Stages of the delivery pipeline timed by {@link StageTimers}, in the order a
+ * notification passes through them. The tag value is the metric's "stage" label.
+ *
+ *   API_ACCEPT    — API: POST /notifications received → 202 returned
+ *   OUTBOX_WAIT   — API: notification_outbox.created_at → published to Kafka
+ *   KAFKA_TRANSIT — worker: published to Kafka → consumed (first attempts only)
+ *   DEDUPE        — worker: already-delivered check
+ *   POLICY        — worker: channel order resolution (policy cache)
+ *   RENDER        — worker: template render for one channel
+ *   PROVIDER      — worker: ChannelSender call, including the concurrency-limit wait
+ *   PERSIST       — worker: notification_logs / failed_notifications writes
+ */
+public enum PipelineStage {
+    API_ACCEPT("api_accept"),
+    OUTBOX_WAIT("outbox_wait"),
+    KAFKA_TRANSIT("kafka_transit"),
+    DEDUPE("dedupe"),
+    POLICY("policy"),
+    RENDER("render"),
+    PROVIDER("provider"),
+    PERSIST("persist");
+
+    private final String tag;
+
+    PipelineStage(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
@@ -0,0 +1,86 @@
+package com.notifly.common.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage latency histograms shared by the API and the worker:
+ *
+ *   notification_stage_seconds{stage, channel, plan}
+ *
+ * Buckets are fixed service-level objectives ({@link #SLO_BUCKETS}) rather
+ * than client-side percentiles, so they aggregate across nodes —
+ * histogram_quantile() over the sum of every instance's buckets gives the
+ * fleet-wide p99 per stage.
+ *
+ * Tags are bounded: stage is a {@link PipelineStage}, channel is
+ * EMAIL/SMS/PUSH (or ALL for work not tied to one channel, such as a batch
+ * write), plan is the tenant's plan — never a tenant id.
+ *
+ * Timers are created once per tag combination and kept, so recording on the
+ * hot path is a map lookup and an atomic update.
+ */
+@Component
+public class StageTimers {
+
+    public static final String METRIC = "notification_stage_seconds";
+
+    /** Channel tag for work that covers several notifications or channels. */
+    public static final String ALL = "ALL";
+
+    public static final Duration[] SLO_BUCKETS = {
+            Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25),
+            Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5), Duration.ofSeconds(10),
+            Duration.ofSeconds(30), Duration.ofSeconds(60)
+    };
+
+    private record TimerKey(PipelineStage stage, String channel, String plan) {}
+
+    private final MeterRegistry registry;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public StageTimers(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Record a stage that started at {@code startNanos} (System.nanoTime()). */
+    public void recordSince(PipelineStage stage, String channel, String plan, long startNanos) {
+        timer(stage, channel, plan).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record a stage measured between wall-clock timestamps taken on different
+     * machines (epoch millis). Clock skew can make it negative; that counts as 0.
+     */
+    public void recordMillis(PipelineStage stage, String channel, String plan, long millis) {
+        timer(stage, channel, plan).record(Math.max(0L, millis), TimeUnit.MILLISECONDS);
+    }
+
+    public Timer timer(PipelineStage stage, String channel, String plan) {
+        return timers.computeIfAbsent(new TimerKey(stage, normalize(channel), normalize(plan)),
+                key -> Timer.builder(METRIC)
+                        .description("Time spent in each delivery pipeline stage")
+                        .tag("stage", key.stage().tag())
+                        .tag("channel", key.channel())
+                        .tag("plan", key.plan())
+                        .serviceLevelObjectives(SLO_BUCKETS)
+                        .minimumExpectedValue(SLO_BUCKETS[0])
+                        .maximumExpectedValue(SLO_BUCKETS[SLO_BUCKETS.length - 1])
+                        .register(registry));
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) return "UNKNOWN";
+        // Comma-separated channel lists are tagged by their first channel
+        int comma = value.indexOf(',');
+        return (comma < 0 ? value : value.substring(0, comma)).trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -39,8 +39,18 @@ public class KafkaConsumerConfig {
     @Value("${notifly.worker.concurrency:10}")
     private int concurrency;
 
+    @Value("${notifly.worker.priority.concurrency:3}")
+    private int priorityConcurrency;
+
+    @Value("${notifly.worker.priority.max-poll-records:5}")
+    private int priorityMaxPollRecords;
+
     @Bean
     public ConsumerFactory<String, String> consumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(consumerProps(50));
+    }
+
+    private Map<String, Object> consumerProps(int maxPollRecords) {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
@@ -51,8 +61,8 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, 300_000);
         props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 30_000);
         props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 10_000);
-        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 50);
-        return new DefaultKafkaConsumerFactory<>(props);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        return props;
     }
 
     @Bean
@@ -77,4 +87,59 @@ public class KafkaConsumerConfig {
 
         return factory;
     }
-}
\ No newline at end of file
+
+    /**
+     * Batch variant of {@link #kafkaListenerContainerFactory()} for the main
+     * notification.events listener when notifly.worker.batch.enabled=true.
+     *
+     * The listener receives the whole poll (up to MAX_POLL_RECORDS_CONFIG records),
+     * dedupe-checks it with one query, writes all log rows with one JDBC batch
+     * and acknowledges once. The retry-tier listeners stay on the record factory
+     * because RetryDelayGate works per record.
+     *
+     * MANUAL_IMMEDIATE is kept so the listener can also use partial batch
+     * acknowledgment (acknowledge(index) / nack(index, sleep)).
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setPollTimeout(3000);
+        factory.getContainerProperties().setShutdownTimeout(10_000L);
+        factory.getContainerProperties().setMissingTopicsFatal(false);
+
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(0L, 0L)));
+
+        return factory;
+    }
+
+    /**
+     * Record factory for the notification.events.priority listener. Its own
+     * consumers (notifly.worker.priority.concurrency) are capacity reserved for
+     * the priority lane; small polls keep one slow send from holding the
+     * records polled with it.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> priorityKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(consumerProps(priorityMaxPollRecords)));
+        factory.setConcurrency(priorityConcurrency);
+
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setPollTimeout(1000);
+        factory.getContainerProperties().setShutdownTimeout(10_000L);
+        factory.getContainerProperties().setMissingTopicsFatal(false);
+
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(0L, 0L)));
+
+        return factory;
+    }
+}
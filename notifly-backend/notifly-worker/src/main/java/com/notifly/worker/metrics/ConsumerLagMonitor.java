@@ -0,0 +1,115 @@
+package com.notifly.worker.metrics;
+
+import com.notifly.common.config.KafkaTopics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * notifly_consumer_lag{group,topic} — records each worker consumer group has
+ * not yet committed, summed over the topic's partitions.
+ *
+ * Refreshed every notifly.worker.metrics.lag-refresh-ms with two admin calls
+ * per group (committed offsets, then end offsets), off the consumer threads.
+ * Every worker reports the same group-level value, so dashboards should take
+ * max() across instances rather than sum(). Partitions the group has never
+ * committed are not counted. On an admin error the last value is kept.
+ */
+@Slf4j
+@Component
+public class ConsumerLagMonitor {
+
+    /** Consumer group → topic, as declared on NotificationEventListener's @KafkaListeners. */
+    private static final Map<String, String> GROUP_TOPICS = new LinkedHashMap<>();
+    static {
+        GROUP_TOPICS.put("notifly-worker", KafkaTopics.NOTIFICATION_EVENTS);
+        GROUP_TOPICS.put("notifly-worker-priority", KafkaTopics.NOTIFICATION_EVENTS_PRIORITY);
+        GROUP_TOPICS.put("notifly-worker-retry-1s", KafkaTopics.NOTIFICATION_RETRY_1S);
+        GROUP_TOPICS.put("notifly-worker-retry-5s", KafkaTopics.NOTIFICATION_RETRY_5S);
+        GROUP_TOPICS.put("notifly-worker-retry-30s", KafkaTopics.NOTIFICATION_RETRY_30S);
+        GROUP_TOPICS.put("notifly-worker-dlq", KafkaTopics.NOTIFICATION_DLQ);
+    }
+
+    private final AdminClient admin;
+    private final long timeoutMs;
+    private final Map<String, AtomicLong> lagByGroup = new HashMap<>();
+
+    public ConsumerLagMonitor(
+            MeterRegistry registry,
+            @Value("${spring.kafka.bootstrap-servers}") String bootstrapServers,
+            @Value("${notifly.worker.metrics.lag-timeout-ms:5000}") long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        this.admin = AdminClient.create(Map.of(
+                AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                AdminClientConfig.REQUEST_TIMEOUT_MS_CONFIG, (int) timeoutMs,
+                AdminClientConfig.DEFAULT_API_TIMEOUT_MS_CONFIG, (int) timeoutMs));
+
+        GROUP_TOPICS.forEach((group, topic) -> {
+            AtomicLong lag = new AtomicLong();
+            lagByGroup.put(group, lag);
+            Gauge.builder("notifly_consumer_lag", lag, AtomicLong::get)
+                    .tag("group", group)
+                    .tag("topic", topic)
+                    .description("Records not yet committed by the consumer group")
+                    .register(registry);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${notifly.worker.metrics.lag-refresh-ms:15000}",
+               initialDelayString = "${notifly.worker.metrics.lag-initial-delay-ms:30000}")
+    public void refresh() {
+        GROUP_TOPICS.forEach((group, topic) -> {
+            try {
+                lagByGroup.get(group).set(lagOf(group, topic));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.debug("ConsumerLagMonitor: Could not read lag for group={}: {}", group, e.getMessage());
+            }
+        });
+    }
+
+    private long lagOf(String group, String topic) throws Exception {
+        Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(group)
+                .partitionsToOffsetAndMetadata().get(timeoutMs, TimeUnit.MILLISECONDS);
+
+        Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+        committed.forEach((tp, offset) -> {
+            if (offset != null && topic.equals(tp.topic())) {
+                request.put(tp, OffsetSpec.latest());
+            }
+        });
+        if (request.isEmpty()) {
+            return 0L;
+        }
+
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> end =
+                admin.listOffsets(request).all().get(timeoutMs, TimeUnit.MILLISECONDS);
+        long lag = 0L;
+        for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> e : end.entrySet()) {
+            lag += Math.max(0L, e.getValue().offset() - committed.get(e.getKey()).offset());
+        }
+        return lag;
+    }
+
+    @PreDestroy
+    void close() {
+        admin.close();
+    }
+}
@@ -1,10 +1,21 @@
 package com.notifly.worker.metrics;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.stereotype.Component;
 
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 /**
  * Prometheus metrics for the Notifly Worker.
  *
@@ -17,15 +28,100 @@ import org.springframework.stereotype.Component;
  *  - notifications_failed_total{channel}      — failed deliveries
  *  - notifications_dlq_total{channel}         — messages moved to DLQ
  *  - notifications_retry_total{channel,attempt} — retry attempts
- *  - notification_processing_seconds          — end-to-end processing time
+ *  - notifications_suppressed_total{channel}  — sends skipped for suppressed recipients
+ *  - notification_processing_seconds{channel,success} — worker processing time per message
+ *  - notification_stage_seconds{stage,channel,plan} — per-stage SLO histograms
+ *    (recorded through common StageTimers, shared with the API)
+ *  - notifly_provider_in_flight{channel}      — provider calls currently in flight
+ *  - notifly_provider_concurrency_limit{channel} — adaptive in-flight limit
+ *  - notifly_provider_circuit_state{channel}  — 0 closed, 1 half-open, 2 open
+ *  - notifly_provider_circuit_transitions_total{channel,state} — breaker state changes
+ *  - notifly_provider_rejected_total{channel,reason} — calls refused before the
+ *    provider (circuit_open, saturated, rate_limited)
+ *  - notifly_consumer_lag{group,topic}        — see ConsumerLagMonitor
+ *  - notifly_tenant_queue_depth{tenant,plan}  — records waiting in TenantFairScheduler
+ *    (only tenants with queued work, so cardinality follows the backlog)
+ *  - notifly_fair_queue_active_tenants        — tenants with queued work
+ *  - cache_gets_total{cache,result}           — in-process cache hits/misses
+ *  - notifly_cache_hit_ratio{cache}           — hit ratio since startup
+ *
+ * FIXED: Every increment used to run Counter.builder(...).register(registry)
+ * — a registry lookup, a tag array and a String.split per message. All
+ * handles are now registered once at startup in tables indexed by
+ * {@link MetricChannel} (and attempt / outcome), so the hot path is an array
+ * read and an increment. Unrecognised channels share the UNKNOWN row, which
+ * also keeps tag cardinality bounded.
  */
 @Component
 public class NotificationMetrics {
 
+    /** Highest retry attempt tracked separately; later attempts share its counter. */
+    private static final int MAX_ATTEMPT = 5;
+
     private final MeterRegistry registry;
 
+    private final Counter[] sent;
+    private final Counter[] failed;
+    private final Counter[] dlq;
+    private final Counter[] suppressed;
+    private final Counter[][] retries;        // [channel][attempt]
+    private final Timer[][] processing;       // [channel][success ? 1 : 0]
+    private final Counter[][] transitions;    // [channel][CircuitState]
+    private final Counter[][] rejected;       // [channel][ProviderRejection]
+    private final MultiGauge tenantQueueDepth;
+
     public NotificationMetrics(MeterRegistry registry) {
         this.registry = registry;
+
+        MetricChannel[] channels = MetricChannel.values();
+        this.sent = new Counter[channels.length];
+        this.failed = new Counter[channels.length];
+        this.dlq = new Counter[channels.length];
+        this.suppressed = new Counter[channels.length];
+        this.retries = new Counter[channels.length][MAX_ATTEMPT + 1];
+        this.processing = new Timer[channels.length][2];
+        this.transitions = new Counter[channels.length][CircuitState.values().length];
+        this.rejected = new Counter[channels.length][ProviderRejection.values().length];
+        this.tenantQueueDepth = MultiGauge.builder("notifly_tenant_queue_depth")
+                .description("Records waiting in the worker's fair scheduler per tenant")
+                .register(registry);
+
+        for (MetricChannel channel : channels) {
+            int c = channel.ordinal();
+            sent[c] = counter("notifications_sent_total", "Total notifications sent successfully", channel);
+            failed[c] = counter("notifications_failed_total", "Total notifications failed after all retries", channel);
+            dlq[c] = counter("notifications_dlq_total", "Total notifications moved to DLQ", channel);
+            suppressed[c] = counter("notifications_suppressed_total",
+                    "Total sends skipped for suppressed recipients", channel);
+            for (int attempt = 1; attempt <= MAX_ATTEMPT; attempt++) {
+                retries[c][attempt] = Counter.builder("notifications_retry_total")
+                        .tag("channel", channel.name())
+                        .tag("attempt", String.valueOf(attempt))
+                        .description("Total notification retry attempts")
+                        .register(registry);
+            }
+            for (int success = 0; success <= 1; success++) {
+                processing[c][success] = Timer.builder("notification_processing_seconds")
+                        .tag("channel", channel.name())
+                        .tag("success", String.valueOf(success == 1))
+                        .description("End-to-end notification processing time")
+                        .register(registry);
+            }
+            for (CircuitState state : CircuitState.values()) {
+                transitions[c][state.ordinal()] = Counter.builder("notifly_provider_circuit_transitions_total")
+                        .tag("channel", channel.name())
+                        .tag("state", state.name())
+                        .description("Provider circuit breaker state changes")
+                        .register(registry);
+            }
+            for (ProviderRejection reason : ProviderRejection.values()) {
+                rejected[c][reason.ordinal()] = Counter.builder("notifly_provider_rejected_total")
+                        .tag("channel", channel.name())
+                        .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                        .description("Provider calls refused by the limiter or circuit breaker")
+                        .register(registry);
+            }
+        }
     }
 
     /**
@@ -33,11 +129,7 @@ public class NotificationMetrics {
      * Used when a notification is successfully delivered.
      */
     public void incrementSent(String channel) {
-        Counter.builder("notifications_sent_total")
-                .tag("channel", normalizeChannel(channel))
-                .description("Total notifications sent successfully")
-                .register(registry)
-                .increment();
+        sent[MetricChannel.of(channel).ordinal()].increment();
     }
 
     /**
@@ -45,11 +137,7 @@ public class NotificationMetrics {
      * Used when all retry attempts for a channel fail.
      */
     public void incrementFailed(String channel) {
-        Counter.builder("notifications_failed_total")
-                .tag("channel", normalizeChannel(channel))
-                .description("Total notifications failed after all retries")
-                .register(registry)
-                .increment();
+        failed[MetricChannel.of(channel).ordinal()].increment();
     }
 
     /**
@@ -57,54 +145,144 @@ public class NotificationMetrics {
      * Used when a message reaches the dead letter queue.
      */
     public void incrementDlq(String channel) {
-        Counter.builder("notifications_dlq_total")
-                .tag("channel", normalizeChannel(channel))
-                .description("Total notifications moved to DLQ")
-                .register(registry)
-                .increment();
+        dlq[MetricChannel.of(channel).ordinal()].increment();
     }
 
     /**
-     * Increment retry counter for a specific attempt.
+     * Increment suppressed counter for a channel.
+     * Used when a send is skipped because the recipient is on the suppression list.
      */
-    public void incrementRetry(String channel, int attemptNumber) {
-        Counter.builder("notifications_retry_total")
-                .tag("channel", normalizeChannel(channel))
-                .tag("attempt", String.valueOf(attemptNumber))
-                .description("Total notification retry attempts")
-                .register(registry)
-                .increment();
+    public void incrementSuppressed(String channel) {
+        suppressed[MetricChannel.of(channel).ordinal()].increment();
     }
 
     /**
-     * Record provider latency for a channel.
-     * Used to track how long the actual send call takes.
+     * Increment retry counter for a specific attempt.
      */
-    public void recordProviderLatency(String channel, long latencyMs) {
-        registry.timer("notification_provider_latency_ms",
-                "channel", normalizeChannel(channel))
-                .record(latencyMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+    public void incrementRetry(String channel, int attemptNumber) {
+        int attempt = Math.max(1, Math.min(attemptNumber, MAX_ATTEMPT));
+        retries[MetricChannel.of(channel).ordinal()][attempt].increment();
     }
 
     /**
-     * Get a timer to record end-to-end processing time.
-     * Usage: try (Timer.Sample sample = metrics.startProcessingTimer()) { ... }
+     * Start timing one message's processing (dedupe excluded, persistence of
+     * the single-record path included). Finish with {@link #stopProcessingTimer}.
+     * Provider latency is the "provider" stage of notification_stage_seconds.
      */
     public Timer.Sample startProcessingTimer() {
         return Timer.start(registry);
     }
 
     public void stopProcessingTimer(Timer.Sample sample, String channel, boolean success) {
-        sample.stop(Timer.builder("notification_processing_seconds")
-                .tag("channel", normalizeChannel(channel))
-                .tag("success", String.valueOf(success))
-                .description("End-to-end notification processing time")
-                .register(registry));
+        sample.stop(processing[MetricChannel.of(channel).ordinal()][success ? 1 : 0]);
+    }
+
+    /**
+     * Gauge of provider calls currently in flight on a channel
+     * (ChannelConcurrencyLimiter registers one per known channel).
+     */
+    public void monitorInFlight(String channel, Supplier<Number> inFlight) {
+        Gauge.builder("notifly_provider_in_flight", inFlight)
+                .tag("channel", MetricChannel.of(channel).name())
+                .description("Provider calls currently in flight")
+                .register(registry);
+    }
+
+    /**
+     * Gauges of a channel's adaptive in-flight limit and circuit breaker state
+     * (ChannelConcurrencyLimiter registers one pair per known channel).
+     */
+    public void monitorProvider(String channel, Supplier<Number> limit, Supplier<CircuitState> state) {
+        String tag = MetricChannel.of(channel).name();
+        Gauge.builder("notifly_provider_concurrency_limit", limit)
+                .tag("channel", tag)
+                .description("Adaptive limit on provider calls in flight")
+                .register(registry);
+        Gauge.builder("notifly_provider_circuit_state", () -> state.get().ordinal())
+                .tag("channel", tag)
+                .description("Provider circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .register(registry);
+    }
+
+    public void incrementCircuitTransition(String channel, CircuitState state) {
+        transitions[MetricChannel.of(channel).ordinal()][state.ordinal()].increment();
+    }
+
+    public void incrementProviderRejected(String channel, ProviderRejection reason) {
+        rejected[MetricChannel.of(channel).ordinal()][reason.ordinal()].increment();
+    }
+
+    /** Gauge of tenants with deliveries queued in TenantFairScheduler. */
+    public void monitorFairQueue(Supplier<Number> activeTenants) {
+        Gauge.builder("notifly_fair_queue_active_tenants", activeTenants)
+                .description("Tenants with deliveries waiting in the fair scheduler")
+                .register(registry);
+    }
+
+    /**
+     * Replace the per-tenant queue depth rows. Tenants absent from
+     * {@code depths} are removed from the gauge.
+     */
+    public void updateTenantQueueDepths(Map<UUID, Integer> depths, Function<UUID, String> planOf) {
+        tenantQueueDepth.register(depths.entrySet().stream()
+                .<MultiGauge.Row<?>>map(e -> MultiGauge.Row.of(Tags.of(
+                        "tenant", e.getKey() != null ? e.getKey().toString() : "UNKNOWN",
+                        "plan", e.getKey() != null ? planOf.apply(e.getKey()) : "UNKNOWN"), e.getValue()))
+                .toList(), true);
+    }
+
+    /**
+     * Expose a Caffeine cache's statistics (gets, hits/misses, evictions, size)
+     * plus a hit-ratio gauge. The cache must be built with recordStats().
+     */
+    public void monitorCache(String name, Cache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+        Gauge.builder("notifly_cache_hit_ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", name)
+                .description("In-process cache hit ratio since startup")
+                .register(registry);
+    }
+
+    /** Provider circuit breaker states; the ordinal is the circuit_state gauge value. */
+    public enum CircuitState { CLOSED, HALF_OPEN, OPEN }
+
+    /** Why a provider call was refused before reaching the provider. */
+    public enum ProviderRejection { CIRCUIT_OPEN, SATURATED, RATE_LIMITED }
+
+    /** Channel tag values. Row index into the pre-registered meter tables. */
+    public enum MetricChannel {
+        EMAIL, SMS, PUSH, UNKNOWN;
+
+        public static MetricChannel of(String channel) {
+            if (channel == null) {
+                return UNKNOWN;
+            }
+            // Exact matches are the hot path — no allocation
+            switch (channel) {
+                case "EMAIL": return EMAIL;
+                case "SMS":   return SMS;
+                case "PUSH":  return PUSH;
+                default:      return slowPath(channel);
+            }
+        }
+
+        private static MetricChannel slowPath(String channel) {
+            // Comma-separated list (several channels attempted) → first channel
+            int comma = channel.indexOf(',');
+            String first = (comma < 0 ? channel : channel.substring(0, comma)).trim().toUpperCase(Locale.ROOT);
+            return switch (first) {
+                case "EMAIL" -> EMAIL;
+                case "SMS" -> SMS;
+                case "PUSH" -> PUSH;
+                default -> UNKNOWN;
+            };
+        }
     }
 
-    private String normalizeChannel(String channel) {
-        if (channel == null || channel.isBlank()) return "UNKNOWN";
-        // Handle comma-separated channels (when multiple channels were attempted)
-        return channel.split(",")[0].trim().toUpperCase();
+    private Counter counter(String name, String description, MetricChannel channel) {
+        return Counter.builder(name)
+                .tag("channel", channel.name())
+                .description(description)
+                .register(registry);
     }
 }
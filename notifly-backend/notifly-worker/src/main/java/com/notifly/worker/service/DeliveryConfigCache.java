@@ -0,0 +1,169 @@
+package com.notifly.worker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.notifly.common.config.RedisChannels;
+import com.notifly.common.domain.entity.EventChannelPolicy;
+import com.notifly.common.domain.entity.NotificationTemplate;
+import com.notifly.common.domain.repository.EventChannelPolicyRepository;
+import com.notifly.common.domain.repository.NotificationTemplateRepository;
+import com.notifly.common.domain.repository.TenantRepository;
+import com.notifly.common.dto.ConfigChangeEvent;
+import com.notifly.worker.metrics.NotificationMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * In-process cache of the delivery configuration the processor reads for every
+ * message: channel fallback policies and active templates.
+ *
+ * Previously each message cost a policy query, a template query for the
+ * subject and a Redis round trip (or a template query) for the content. With
+ * this cache the hot path does no network I/O for configuration.
+ *
+ * Keys follow the lookups the processor actually performs:
+ *   policy   → (tenantId, eventType)
+ *   template → (tenantId, channel)   — the active template per channel
+ *   plan     → tenantId              — only used to tag metrics (StageTimers)
+ * Absence is cached too (most tenants have no policy for most event types).
+ *
+ * Freshness: the API publishes a ConfigChangeEvent on
+ * RedisChannels.CONFIG_CHANGES when templates or policies change, and every
+ * worker evicts the affected keys. The TTL is only a safety net for missed
+ * messages (and the only freshness for plans, which change rarely and only
+ * affect metric tags). Compiled templates (TemplateRenderer) are keyed by the
+ * snapshot's id, version and updatedAt, so a fresh snapshot never reuses
+ * stale output.
+ */
+@Slf4j
+@Component
+public class DeliveryConfigCache implements MessageListener {
+
+    /** Immutable copy of the template fields used for delivery. Safe to share across threads. */
+    public record TemplateSnapshot(UUID tenantId, UUID id, int version, String channel,
+                                   String subject, String content, Instant updatedAt) {}
+
+    private record PolicyKey(UUID tenantId, String eventType) {}
+
+    private record TemplateKey(UUID tenantId, String channel) {}
+
+    private final EventChannelPolicyRepository channelPolicyRepository;
+    private final NotificationTemplateRepository templateRepository;
+    private final TenantRepository tenantRepository;
+    private final ObjectMapper objectMapper;
+
+    private final Cache<PolicyKey, Optional<List<String>>> policies;
+    private final Cache<TemplateKey, Optional<TemplateSnapshot>> templates;
+    private final Cache<UUID, String> plans;
+
+    public DeliveryConfigCache(
+            EventChannelPolicyRepository channelPolicyRepository,
+            NotificationTemplateRepository templateRepository,
+            TenantRepository tenantRepository,
+            ObjectMapper objectMapper,
+            RedisMessageListenerContainer listenerContainer,
+            NotificationMetrics metrics,
+            @Value("${notifly.worker.config-cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${notifly.worker.config-cache.max-size:10000}") long maxSize) {
+
+        this.channelPolicyRepository = channelPolicyRepository;
+        this.templateRepository = templateRepository;
+        this.tenantRepository = tenantRepository;
+        this.objectMapper = objectMapper;
+
+        this.policies = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.templates = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+
+        this.plans = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+
+        metrics.monitorCache("channel_policy", policies);
+        metrics.monitorCache("template_snapshot", templates);
+        metrics.monitorCache("tenant_plan", plans);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisChannels.CONFIG_CHANGES));
+    }
+
+    /**
+     * @return the policy's fallback order, or empty if the tenant has no policy
+     *         (or an empty one) for this event type
+     */
+    public Optional<List<String>> fallbackOrder(UUID tenantId, String eventType) {
+        return policies.get(new PolicyKey(tenantId, eventType), key ->
+                channelPolicyRepository.findByTenantIdAndEventType(key.tenantId(), key.eventType())
+                        .map(EventChannelPolicy::getFallbackOrder)
+                        .filter(order -> !order.isEmpty())
+                        .map(List::copyOf));
+    }
+
+    public Optional<TemplateSnapshot> activeTemplate(UUID tenantId, String channel) {
+        return templates.get(new TemplateKey(tenantId, channel), key ->
+                templateRepository.findFirstByTenantIdAndChannelAndIsActiveTrue(key.tenantId(), key.channel())
+                        .map(DeliveryConfigCache::snapshot));
+    }
+
+    /** The tenant's plan (FREE, PRO, ...), or UNKNOWN for a tenant that no longer exists. */
+    public String tenantPlan(UUID tenantId) {
+        if (tenantId == null) {
+            return "UNKNOWN";
+        }
+        return plans.get(tenantId, id -> tenantRepository.findById(id)
+                .map(t -> t.getPlan() != null ? t.getPlan() : "UNKNOWN")
+                .orElse("UNKNOWN"));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            ConfigChangeEvent event = objectMapper.readValue(message.getBody(), ConfigChangeEvent.class);
+            evict(event);
+        } catch (Exception e) {
+            log.warn("Ignoring malformed config change message: {}", e.getMessage());
+        }
+    }
+
+    private void evict(ConfigChangeEvent event) {
+        if (event.getType() == null || event.getTenantId() == null) {
+            return;
+        }
+        switch (event.getType()) {
+            case CHANNEL_POLICY -> policies.invalidate(new PolicyKey(event.getTenantId(), event.getEventType()));
+            case TEMPLATE -> {
+                if (event.getChannel() != null) {
+                    templates.invalidate(new TemplateKey(event.getTenantId(), event.getChannel()));
+                } else {
+                    templates.asMap().keySet().removeIf(k -> k.tenantId().equals(event.getTenantId()));
+                }
+            }
+        }
+        log.debug("Delivery config evicted: {}", event);
+    }
+
+    private static TemplateSnapshot snapshot(NotificationTemplate t) {
+        return new TemplateSnapshot(t.getTenantId(), t.getId(), t.getVersion(), t.getChannel(),
+                t.getSubject(), t.getContent(), t.getUpdatedAt());
+    }
+}
@@ -0,0 +1,76 @@
+package com.notifly.worker.service;
+
+import com.notifly.worker.service.sender.SendResult;
+import lombok.Getter;
+
+/**
+ * Result of processing one notification across its channels.
+ *
+ * Replaces the old boolean so the listener can tell a failure worth retrying
+ * from one that never will succeed:
+ *
+ *  DELIVERED  — a channel accepted it.
+ *  RETRYABLE  — at least one channel failed transiently (network, 5xx,
+ *               exception); route to the next retry tier.
+ *  PERMANENT  — every attempted channel failed permanently (invalid recipient,
+ *               provider 4xx) or there was nothing to try; retrying would only
+ *               repeat the same provider calls, so it goes straight to
+ *               failed_notifications with {@link #getErrorCode()}.
+ *
+ * channel / errorCode / errorMessage describe the last failure (null when delivered).
+ */
+@Getter
+public final class DeliveryOutcome {
+
+    public enum Status { DELIVERED, RETRYABLE, PERMANENT }
+
+    private static final DeliveryOutcome DELIVERED = new DeliveryOutcome(Status.DELIVERED, null, null, null);
+
+    private final Status status;
+    private final String channel;
+    private final String errorCode;
+    private final String errorMessage;
+
+    private DeliveryOutcome(Status status, String channel, String errorCode, String errorMessage) {
+        this.status = status;
+        this.channel = channel;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    public static DeliveryOutcome delivered() {
+        return DELIVERED;
+    }
+
+    public static DeliveryOutcome retryable(String channel, String errorCode, String errorMessage) {
+        return new DeliveryOutcome(Status.RETRYABLE, channel, errorCode, errorMessage);
+    }
+
+    public static DeliveryOutcome permanent(String channel, String errorCode, String errorMessage) {
+        return new DeliveryOutcome(Status.PERMANENT, channel, errorCode, errorMessage);
+    }
+
+    /** Outcome of a single failed channel send. */
+    static DeliveryOutcome ofFailure(String channel, SendResult result) {
+        return result.isPermanentFailure()
+                ? permanent(channel, result.getErrorCode(), result.getErrorMessage())
+                : retryable(channel, result.getErrorCode(), result.getErrorMessage());
+    }
+
+    public boolean isDelivered() {
+        return status == Status.DELIVERED;
+    }
+
+    public boolean isPermanent() {
+        return status == Status.PERMANENT;
+    }
+
+    public boolean isRetryable() {
+        return status == Status.RETRYABLE;
+    }
+
+    @Override
+    public String toString() {
+        return status + (errorCode != null ? "(" + channel + ": " + errorCode + ")" : "");
+    }
+}
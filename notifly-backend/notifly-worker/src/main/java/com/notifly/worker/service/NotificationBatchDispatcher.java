@@ -0,0 +1,394 @@
+package com.notifly.worker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notifly.common.domain.entity.NotificationLog;
+import com.notifly.common.dto.KafkaNotificationEvent;
+import com.notifly.common.metrics.PipelineStage;
+import com.notifly.common.metrics.StageTimers;
+import com.notifly.common.util.CorrelationIdUtil;
+import com.notifly.worker.metrics.NotificationMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes one Kafka poll for the batch listener.
+ *
+ * Pipeline per poll:
+ *  1. Parse all records, dedupe-check them with one query.
+ *  2. Deliver — on virtual threads (notifly.worker.dispatch.virtual-threads,
+ *     default true; false delivers sequentially on the consumer thread) so the
+ *     blocking provider calls of one poll overlap. Records sharing a Kafka key
+ *     run one after another on the same virtual thread, preserving per-key
+ *     order; ChannelConcurrencyLimiter bounds in-flight sends per channel.
+ *     With notifly.worker.fairness.enabled (default) the key groups go through
+ *     TenantFairScheduler, which starts them in weighted deficit round-robin
+ *     order across the tenants of every consumer thread's poll.
+ *  3. Write every resulting notification_logs row with one JDBC batch.
+ *  4. Write permanent failures to failed_notifications in one saveAll — they
+ *     skip the retry tiers (falling back to them if the write fails).
+ *  5. Route retryable failures to the next retry tier and wait for the hand-offs.
+ *
+ * Stage timings: dedupe and persistence are per poll and tagged channel/plan
+ * ALL; Kafka transit is recorded per record.
+ *
+ * The caller commits only the contiguous prefix of records that were fully
+ * handled (delivered, skipped as duplicate, or durably handed to a retry topic)
+ * and re-seeks the rest; see {@link #dispatch}.
+ *
+ * FIXED: When delivery hit batch-timeout-ms, the unfinished tasks kept running
+ * (and calling providers) after their records had been nacked, so the
+ * redelivered records were sent twice; records already routed to a retry topic
+ * or failed_notifications behind the first unfinished one were handled twice
+ * too. Now, on timeout:
+ *  - key groups that have not started are abandoned (and their fair-scheduler
+ *    jobs cancelled); groups that are running stop after their current record,
+ *    and the dispatcher waits for them, so every log row is persisted and no
+ *    task touches a record after the commit decision;
+ *  - records that were never attempted are handed to the first retry tier
+ *    like any other retryable failure, so the rest of the poll can be
+ *    committed instead of redelivered.
+ */
+@Slf4j
+@Service
+public class NotificationBatchDispatcher {
+
+    private enum Stage { PENDING, DONE, NEEDS_RETRY, PERMANENT_FAILURE }
+
+    /** Per-record state within one poll. Written by one thread, read after its group has finished. */
+    private static final class RecordTask {
+        final ConsumerRecord<String, String> record;
+        final KafkaNotificationEvent event;
+        final List<NotificationLog> logs = new ArrayList<>();
+        volatile Stage stage = Stage.PENDING;
+        DeliveryOutcome outcome;
+        CompletableFuture<?> retryHandOff;
+
+        RecordTask(ConsumerRecord<String, String> record, KafkaNotificationEvent event) {
+            this.record = record;
+            this.event = event;
+        }
+
+        boolean isComplete() {
+            return stage == Stage.DONE
+                || (stage == Stage.NEEDS_RETRY && retryHandOff != null
+                    && retryHandOff.isDone() && !retryHandOff.isCompletedExceptionally());
+        }
+    }
+
+    /**
+     * Records sharing a Kafka key, delivered in order by one task. start() and
+     * abandon() race once: whichever wins decides whether the group runs.
+     */
+    private static final class KeyGroup {
+        private static final int QUEUED = 0, RUNNING = 1, ABANDONED = 2;
+
+        final List<RecordTask> tasks = new ArrayList<>();
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        final CompletableFuture<Void> finished = new CompletableFuture<>();
+        CompletableFuture<?> submitted;
+
+        boolean start() {
+            return state.compareAndSet(QUEUED, RUNNING);
+        }
+
+        boolean abandon() {
+            return state.compareAndSet(QUEUED, ABANDONED);
+        }
+    }
+
+    private final NotificationProcessorService processorService;
+    private final NotificationLogBatchWriter logBatchWriter;
+    private final RetryRouter retryRouter;
+    private final NotificationMetrics metrics;
+    private final StageTimers stageTimers;
+    private final ObjectMapper objectMapper;
+    private final TenantFairScheduler fairScheduler;
+    private final boolean virtualThreads;
+    private final boolean fairness;
+    private final Duration batchTimeout;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public NotificationBatchDispatcher(
+            NotificationProcessorService processorService,
+            NotificationLogBatchWriter logBatchWriter,
+            RetryRouter retryRouter,
+            NotificationMetrics metrics,
+            StageTimers stageTimers,
+            ObjectMapper objectMapper,
+            TenantFairScheduler fairScheduler,
+            @Value("${notifly.worker.dispatch.virtual-threads:true}") boolean virtualThreads,
+            @Value("${notifly.worker.fairness.enabled:true}") boolean fairness,
+            @Value("${notifly.worker.dispatch.batch-timeout-ms:120000}") long batchTimeoutMs) {
+        this.processorService = processorService;
+        this.logBatchWriter = logBatchWriter;
+        this.retryRouter = retryRouter;
+        this.metrics = metrics;
+        this.stageTimers = stageTimers;
+        this.objectMapper = objectMapper;
+        this.fairScheduler = fairScheduler;
+        this.virtualThreads = virtualThreads;
+        this.fairness = fairness;
+        this.batchTimeout = Duration.ofMillis(batchTimeoutMs);
+    }
+
+    /**
+     * @return index of the first record that was not fully handled, or -1 if
+     *         the whole poll may be committed
+     */
+    public int dispatch(List<ConsumerRecord<String, String>> records, int attempt) {
+        List<RecordTask> tasks = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, String> record : records) {
+            tasks.add(new RecordTask(record, parse(record)));
+        }
+
+        long dedupeStart = System.nanoTime();
+        Set<UUID> alreadyDelivered = processorService.findAlreadyDelivered(
+            tasks.stream().map(t -> t.event).filter(Objects::nonNull).toList());
+        stageTimers.recordSince(PipelineStage.DEDUPE, StageTimers.ALL, StageTimers.ALL, dedupeStart);
+
+        if (virtualThreads) {
+            deliverOnVirtualThreads(tasks, attempt, alreadyDelivered);
+        } else {
+            tasks.forEach(t -> deliver(t, attempt, alreadyDelivered));
+        }
+        retryAbandoned(tasks);
+
+        long persistStart = System.nanoTime();
+        List<NotificationLog> logs = new ArrayList<>();
+        tasks.forEach(t -> logs.addAll(t.logs));
+        logBatchWriter.insertAll(logs);
+
+        recordPermanentFailures(tasks, attempt);
+        stageTimers.recordSince(PipelineStage.PERSIST, StageTimers.ALL, StageTimers.ALL, persistStart);
+        routeFailures(tasks, attempt);
+
+        for (int i = 0; i < tasks.size(); i++) {
+            if (!tasks.get(i).isComplete()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void deliverOnVirtualThreads(List<RecordTask> tasks, int attempt, Set<UUID> alreadyDelivered) {
+        // Same key → same request → must stay in order. Records without a key are independent.
+        Map<String, KeyGroup> byKey = new LinkedHashMap<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            RecordTask task = tasks.get(i);
+            String key = task.record.key() != null ? task.record.key() : "#" + i;
+            byKey.computeIfAbsent(key, k -> new KeyGroup()).tasks.add(task);
+        }
+
+        AtomicBoolean timedOut = new AtomicBoolean();
+        for (KeyGroup group : byKey.values()) {
+            Runnable work = () -> {
+                if (!group.start()) {
+                    return; // Abandoned on timeout before it got to run
+                }
+                try {
+                    for (RecordTask task : group.tasks) {
+                        if (timedOut.get()) {
+                            break;
+                        }
+                        deliver(task, attempt, alreadyDelivered);
+                    }
+                } finally {
+                    group.finished.complete(null);
+                }
+            };
+            group.submitted = fairness
+                ? fairScheduler.submit(tenantOf(group.tasks), group.tasks.size(), work)
+                : CompletableFuture.runAsync(work, executor);
+        }
+
+        CompletableFuture<?>[] submitted = byKey.values().stream()
+            .map(g -> g.submitted)
+            .toArray(CompletableFuture[]::new);
+        if (awaitAll(submitted, batchTimeout, "delivery")) {
+            return;
+        }
+
+        // Stop starting new work, then wait out the sends already in progress —
+        // their logs must be persisted and their records must not be redelivered
+        timedOut.set(true);
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (KeyGroup group : byKey.values()) {
+            if (group.abandon()) {
+                group.submitted.cancel(false);
+            } else {
+                running.add(group.finished);
+            }
+        }
+        CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * Records left unattempted by a delivery timeout go to the first retry tier
+     * with the poll's other retryable failures rather than being redelivered.
+     */
+    private void retryAbandoned(List<RecordTask> tasks) {
+        long abandoned = 0;
+        for (RecordTask task : tasks) {
+            if (task.stage == Stage.PENDING) {
+                task.stage = task.event == null ? Stage.DONE : Stage.NEEDS_RETRY;
+                abandoned++;
+            }
+        }
+        if (abandoned > 0) {
+            log.warn("Batch delivery did not finish within {}ms — {} unattempted records handed to retry",
+                batchTimeout.toMillis(), abandoned);
+        }
+    }
+
+    private void deliver(RecordTask task, int attempt, Set<UUID> alreadyDelivered) {
+        KafkaNotificationEvent event = task.event;
+        if (event == null) {
+            task.stage = Stage.DONE; // Unparseable — discarded, same as the record listener
+            return;
+        }
+
+        CorrelationIdUtil.setCorrelationId(event.getCorrelationId());
+        try {
+            if (attempt == 0) {
+                processorService.recordKafkaTransit(task.record, event);
+            }
+            if (alreadyDelivered.contains(event.getRequestId())) {
+                log.info("[{}] Skipping duplicate: requestId={}", event.getCorrelationId(), event.getRequestId());
+                task.stage = Stage.DONE;
+                return;
+            }
+
+            var processing = metrics.startProcessingTimer();
+            task.outcome = processorService.deliver(event, attempt, task.logs);
+            metrics.stopProcessingTimer(processing, firstChannel(event), task.outcome.isDelivered());
+            if (task.outcome.isDelivered()) {
+                log.info("[{}] Delivered: requestId={}", event.getCorrelationId(), event.getRequestId());
+                metrics.incrementSent(firstChannel(event));
+                task.stage = Stage.DONE;
+            } else {
+                metrics.incrementFailed(firstChannel(event));
+                task.stage = task.outcome.isPermanent() ? Stage.PERMANENT_FAILURE : Stage.NEEDS_RETRY;
+            }
+        } catch (Exception e) {
+            log.error("[{}] Exception in batch delivery: requestId={}, error={}",
+                event.getCorrelationId(), event.getRequestId(), e.getMessage(), e);
+            task.stage = Stage.NEEDS_RETRY;
+        } finally {
+            CorrelationIdUtil.clear();
+        }
+    }
+
+    private void recordPermanentFailures(List<RecordTask> tasks, int attempt) {
+        List<RecordTask> permanent = tasks.stream().filter(t -> t.stage == Stage.PERMANENT_FAILURE).toList();
+        if (permanent.isEmpty()) {
+            return;
+        }
+        try {
+            processorService.recordPermanentFailures(
+                permanent.stream().map(t -> t.event).toList(),
+                permanent.stream().map(t -> t.outcome).toList(),
+                attempt);
+            permanent.forEach(t -> {
+                metrics.incrementDlq(firstChannel(t.event));
+                t.stage = Stage.DONE;
+            });
+        } catch (Exception e) {
+            // Not lost: the retry tiers will end in the DLQ as before
+            log.error("Failed to record {} permanent failures — routing them to retry instead",
+                permanent.size(), e);
+            permanent.forEach(t -> t.stage = Stage.NEEDS_RETRY);
+        }
+    }
+
+    private void routeFailures(List<RecordTask> tasks, int attempt) {
+        List<CompletableFuture<?>> handOffs = new ArrayList<>();
+        for (RecordTask task : tasks) {
+            if (task.stage != Stage.NEEDS_RETRY) {
+                continue;
+            }
+            try {
+                task.retryHandOff = retryRouter.route(task.event, attempt);
+                handOffs.add(task.retryHandOff);
+            } catch (Exception e) {
+                log.error("Failed to route to retry topic: requestId={}", task.event.getRequestId(), e);
+            }
+        }
+        // No timeout of our own: the producer's delivery.timeout.ms bounds each
+        // hand-off, and a send still pending here could land after a redelivery
+        awaitAll(handOffs.toArray(CompletableFuture[]::new), null, "retry hand-off");
+    }
+
+    /**
+     * @param timeout null to wait until every future is done
+     * @return true if every future finished (normally or not) in time
+     */
+    private boolean awaitAll(CompletableFuture<?>[] futures, Duration timeout, String phase) {
+        if (futures.length == 0) {
+            return true;
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures);
+        try {
+            if (timeout == null) {
+                all.get();
+            } else {
+                all.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            log.warn("Batch {} did not finish within {}ms", phase, timeout.toMillis());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            // Individual failures are inspected per record via isComplete()
+        }
+        return true;
+    }
+
+    private KafkaNotificationEvent parse(ConsumerRecord<String, String> record) {
+        try {
+            return objectMapper.readValue(record.value(), KafkaNotificationEvent.class);
+        } catch (Exception e) {
+            log.error("Unparseable message discarded (offset {}): {}", record.offset(), record.value());
+            return null;
+        }
+    }
+
+    /** A key group is one request, so one tenant; null if it could not be parsed. */
+    private static UUID tenantOf(List<RecordTask> group) {
+        for (RecordTask task : group) {
+            if (task.event != null) {
+                return task.event.getTenantId();
+            }
+        }
+        return null;
+    }
+
+    private static String firstChannel(KafkaNotificationEvent event) {
+        return event.getChannels().isEmpty() ? "UNKNOWN" : event.getChannels().get(0);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
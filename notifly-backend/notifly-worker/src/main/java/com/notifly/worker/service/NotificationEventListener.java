@@ -3,19 +3,22 @@ package com.notifly.worker.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notifly.common.config.KafkaTopics;
 import com.notifly.common.dto.KafkaNotificationEvent;
+import com.notifly.common.metrics.PipelineStage;
+import com.notifly.common.metrics.StageTimers;
 import com.notifly.common.util.CorrelationIdUtil;
 import com.notifly.worker.metrics.NotificationMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -37,6 +40,31 @@ import java.util.UUID;
  *  4. FIXED: KafkaTemplate type unified — was mixing KafkaTemplate<String,Object>
  *     and KafkaTemplate<String,String> in original (one in processor, one here).
  *     Now uses String/String consistently and serializes with ObjectMapper.
+ *
+ *  5. FIXED: Retry tiers now actually wait. Records on retry.1s/5s/30s are held
+ *     by RetryDelayGate until their backoff has elapsed (partition paused, not a
+ *     sleeping thread). Previously all four attempts ran within milliseconds.
+ *
+ *  6. ADDED: Batch mode for notification.events (notifly.worker.batch.enabled).
+ *     Exactly one of handleNotificationEvent / handleNotificationEventBatch is
+ *     started; the other container is registered with autoStartup=false.
+ *     Batch mode is the default: tenant fair scheduling (TenantFairScheduler)
+ *     only exists on the batch path.
+ *     Retry routing itself lives in RetryRouter, shared with the batch path.
+ *
+ *  7. Permanent failures (DeliveryOutcome.PERMANENT — invalid recipient,
+ *     provider 4xx) are written to failed_notifications right away instead of
+ *     being sent through retry.1s → 5s → 30s → DLQ.
+ *
+ *  8. Timing: Kafka transit (first attempts) and the dedupe check are recorded
+ *     in StageTimers, and end-to-end processing in notification_processing_seconds.
+ *
+ *  9. ADDED: Priority lane. HIGH-priority events (OTPs, password resets) arrive
+ *     on notification.events.priority and are consumed by their own container
+ *     and consumer group (notifly.worker.priority.concurrency threads), so they
+ *     never wait behind the lag on notification.events. Their provider calls
+ *     get the slots ChannelConcurrencyLimiter reserves for priority traffic.
+ *     Retries of priority events share the normal retry tiers.
  */
 @Slf4j
 @Service
@@ -44,55 +72,106 @@ import java.util.UUID;
 public class NotificationEventListener {
 
     private final NotificationProcessorService processorService;
-    private final KafkaTemplate<String, String> kafkaTemplate;
     private final ObjectMapper objectMapper;
     private final NotificationMetrics metrics;
+    private final RetryDelayGate retryDelayGate;
+    private final RetryRouter retryRouter;
+    private final NotificationBatchDispatcher batchDispatcher;
+    private final StageTimers stageTimers;
 
-    private static final int MAX_ATTEMPTS = 5;
-
-    // Maps retry attempt number → topic to send to on NEXT failure
-    private static final Map<Integer, String> RETRY_TOPIC_MAP = Map.of(
-        1, KafkaTopics.NOTIFICATION_RETRY_1S,
-        2, KafkaTopics.NOTIFICATION_RETRY_5S,
-        3, KafkaTopics.NOTIFICATION_RETRY_30S,
-        4, KafkaTopics.NOTIFICATION_DLQ
-    );
+    private static final Duration BATCH_REDELIVERY_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration RETRY_1S_DELAY = Duration.ofSeconds(1);
+    private static final Duration RETRY_5S_DELAY = Duration.ofSeconds(5);
+    private static final Duration RETRY_30S_DELAY = Duration.ofSeconds(30);
 
     @KafkaListener(
         topics = KafkaTopics.NOTIFICATION_EVENTS,
         groupId = "notifly-worker",
         containerFactory = "kafkaListenerContainerFactory",
-        concurrency = "${notifly.worker.concurrency:10}"
+        concurrency = "${notifly.worker.concurrency:10}",
+        autoStartup = "#{!${notifly.worker.batch.enabled:true}}"
     )
-    public void handleNotificationEvent(@Payload String payload, Acknowledgment ack) {
-        processMessage(payload, 0, ack);
+    public void handleNotificationEvent(ConsumerRecord<String, String> record, Acknowledgment ack) {
+        processMessage(record, 0, ack);
+    }
+
+    /**
+     * Priority lane for first attempts — same processing as
+     * handleNotificationEvent on dedicated consumer threads.
+     */
+    @KafkaListener(
+        id = "notifly-worker-priority",
+        topics = KafkaTopics.NOTIFICATION_EVENTS_PRIORITY,
+        groupId = "notifly-worker-priority",
+        containerFactory = "priorityKafkaListenerContainerFactory"
+    )
+    public void handlePriorityEvent(ConsumerRecord<String, String> record, Acknowledgment ack) {
+        processMessage(record, 0, ack);
+    }
+
+    /**
+     * Batch mode for first attempts — see NotificationBatchDispatcher. The poll
+     * is acknowledged once; if some records could not be fully handled, only
+     * the contiguous prefix before the first of them is committed. If the
+     * dispatch itself fails, nothing is committed and the whole poll is
+     * redelivered.
+     */
+    @KafkaListener(
+        id = "notifly-worker-batch",
+        topics = KafkaTopics.NOTIFICATION_EVENTS,
+        groupId = "notifly-worker",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        concurrency = "${notifly.worker.concurrency:10}",
+        autoStartup = "${notifly.worker.batch.enabled:true}"
+    )
+    public void handleNotificationEventBatch(List<ConsumerRecord<String, String>> records, Acknowledgment ack) {
+        int firstIncomplete;
+        try {
+            firstIncomplete = batchDispatcher.dispatch(records, 0);
+        } catch (Exception e) {
+            // e.g. the dedupe query or the log batch insert failed. Letting it escape
+            // would hand the poll to the container's error handler, which commits it.
+            log.error("Batch dispatch failed — redelivering all {} records: {}", records.size(), e.getMessage(), e);
+            ack.nack(0, BATCH_REDELIVERY_BACKOFF);
+            return;
+        }
+        if (firstIncomplete < 0) {
+            ack.acknowledge();
+        } else {
+            // Commit the contiguous handled prefix, re-seek the rest for redelivery
+            log.warn("Batch partially handled: committing {} of {} records", firstIncomplete, records.size());
+            ack.nack(firstIncomplete, BATCH_REDELIVERY_BACKOFF);
+        }
     }
 
     @KafkaListener(
+        id = "notifly-worker-retry-1s",
         topics = KafkaTopics.NOTIFICATION_RETRY_1S,
         groupId = "notifly-worker-retry-1s",
         containerFactory = "kafkaListenerContainerFactory"
     )
-    public void handleRetry1s(@Payload String payload, Acknowledgment ack) {
-        processMessage(payload, 1, ack);
+    public void handleRetry1s(ConsumerRecord<String, String> record, Acknowledgment ack) {
+        processDelayedRetry("notifly-worker-retry-1s", record, 1, RETRY_1S_DELAY, ack);
     }
 
     @KafkaListener(
+        id = "notifly-worker-retry-5s",
         topics = KafkaTopics.NOTIFICATION_RETRY_5S,
         groupId = "notifly-worker-retry-5s",
         containerFactory = "kafkaListenerContainerFactory"
     )
-    public void handleRetry5s(@Payload String payload, Acknowledgment ack) {
-        processMessage(payload, 2, ack);
+    public void handleRetry5s(ConsumerRecord<String, String> record, Acknowledgment ack) {
+        processDelayedRetry("notifly-worker-retry-5s", record, 2, RETRY_5S_DELAY, ack);
     }
 
     @KafkaListener(
+        id = "notifly-worker-retry-30s",
         topics = KafkaTopics.NOTIFICATION_RETRY_30S,
         groupId = "notifly-worker-retry-30s",
         containerFactory = "kafkaListenerContainerFactory"
     )
-    public void handleRetry30s(@Payload String payload, Acknowledgment ack) {
-        processMessage(payload, 3, ack);
+    public void handleRetry30s(ConsumerRecord<String, String> record, Acknowledgment ack) {
+        processDelayedRetry("notifly-worker-retry-30s", record, 3, RETRY_30S_DELAY, ack);
     }
 
     /**
@@ -124,6 +203,20 @@ public class NotificationEventListener {
         }
     }
 
+    /**
+     * Retry-tier entry point. If the record's backoff has not elapsed yet, its
+     * partition is paused until the due time and the record is nacked so the
+     * container re-seeks to it; it is redelivered once the partition resumes.
+     */
+    private void processDelayedRetry(String listenerId, ConsumerRecord<String, String> record,
+                                     int attempt, Duration delay, Acknowledgment ack) {
+        if (!retryDelayGate.isDue(listenerId, record, delay)) {
+            ack.nack(Duration.ZERO);
+            return;
+        }
+        processMessage(record, attempt, ack);
+    }
+
     /**
      * Core processing method.
      *
@@ -135,33 +228,53 @@ public class NotificationEventListener {
      *  2. Check idempotency (skip if already delivered)
      *  3. Process through channels
      *  4. If success → ack and done
-     *  5. If failure → route to next retry topic (or DLQ if exhausted) → ack
+     *  5. If permanent failure → failed_notifications → ack
+     *  6. If retryable failure → route to next retry topic (or DLQ if exhausted) → ack
      */
-    private void processMessage(String payload, int currentAttempt, Acknowledgment ack) {
+    private void processMessage(ConsumerRecord<String, String> record, int currentAttempt, Acknowledgment ack) {
+        String payload = record.value();
         KafkaNotificationEvent event = null;
         try {
             event = objectMapper.readValue(payload, KafkaNotificationEvent.class);
             CorrelationIdUtil.setCorrelationId(event.getCorrelationId());
 
             UUID tenantId = event.getTenantId();
+            String channel = event.getChannels().isEmpty() ? "UNKNOWN" : event.getChannels().get(0);
+            String plan = processorService.planOf(event);
+            if (currentAttempt == 0) {
+                processorService.recordKafkaTransit(record, event);
+            }
+            var processing = metrics.startProcessingTimer();
 
             // Idempotency check — skip if already successfully delivered
-            if (processorService.hasSuccessfulDelivery(tenantId, event.getRequestId(), event.getChannels())) {
+            long dedupeStart = System.nanoTime();
+            boolean duplicate = processorService.hasSuccessfulDelivery(tenantId, event.getRequestId(), event.getChannels());
+            stageTimers.recordSince(PipelineStage.DEDUPE, channel, plan, dedupeStart);
+            if (duplicate) {
                 log.info("[{}] Skipping duplicate: requestId={}", event.getCorrelationId(), event.getRequestId());
                 ack.acknowledge();
                 return;
             }
 
-            boolean success = processorService.processNotification(event, currentAttempt);
+            DeliveryOutcome outcome = processorService.processNotification(event, currentAttempt);
+            metrics.stopProcessingTimer(processing, channel, outcome.isDelivered());
 
-            if (success) {
+            if (outcome.isDelivered()) {
                 log.info("[{}] Delivered: requestId={}", event.getCorrelationId(), event.getRequestId());
-                metrics.incrementSent(event.getChannels().isEmpty() ? "UNKNOWN" : event.getChannels().get(0));
+                metrics.incrementSent(channel);
+                ack.acknowledge();
+            } else if (outcome.isPermanent()) {
+                // Retrying cannot help — skip the retry tiers entirely
+                long persistStart = System.nanoTime();
+                processorService.recordPermanentFailure(event, outcome, currentAttempt);
+                stageTimers.recordSince(PipelineStage.PERSIST, channel, plan, persistStart);
+                metrics.incrementFailed(channel);
+                metrics.incrementDlq(channel);
                 ack.acknowledge();
             } else {
                 // FIXED: Retry routing happens HERE and ONLY here
-                routeToNextTopic(event, currentAttempt);
-                metrics.incrementFailed(event.getChannels().isEmpty() ? "UNKNOWN" : event.getChannels().get(0));
+                retryRouter.route(event, currentAttempt);
+                metrics.incrementFailed(channel);
                 ack.acknowledge(); // Always ack — we've handed off to the next topic
             }
 
@@ -169,7 +282,7 @@ public class NotificationEventListener {
             log.error("Exception in processMessage, attempt={}: {}", currentAttempt, e.getMessage(), e);
             if (event != null) {
                 try {
-                    routeToNextTopic(event, currentAttempt);
+                    retryRouter.route(event, currentAttempt);
                     ack.acknowledge();
                 } catch (Exception routeEx) {
                     log.error("Failed to route to retry topic — message may be lost", routeEx);
@@ -185,26 +298,4 @@ public class NotificationEventListener {
             CorrelationIdUtil.clear();
         }
     }
-
-    /**
-     * Route to the appropriate retry topic based on attempt number.
-     * If max attempts reached, routes to DLQ.
-     */
-    private void routeToNextTopic(KafkaNotificationEvent event, int currentAttempt) throws Exception {
-        int nextAttempt = currentAttempt + 1;
-        String targetTopic;
-
-        if (nextAttempt >= MAX_ATTEMPTS) {
-            targetTopic = KafkaTopics.NOTIFICATION_DLQ;
-        } else {
-            targetTopic = RETRY_TOPIC_MAP.getOrDefault(nextAttempt, KafkaTopics.NOTIFICATION_DLQ);
-        }
-
-        event.setRetryCount(nextAttempt);
-        String serialized = objectMapper.writeValueAsString(event);
-        kafkaTemplate.send(targetTopic, event.getRequestId().toString(), serialized);
-
-        log.warn("[{}] Routed to {} (attempt {} of {}): requestId={}",
-            event.getCorrelationId(), targetTopic, nextAttempt, MAX_ATTEMPTS, event.getRequestId());
-    }
 }
@@ -0,0 +1,102 @@
+package com.notifly.worker.service;
+
+import com.notifly.common.domain.entity.NotificationLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes notification_logs rows with a single JDBC batch.
+ *
+ * Used by the batch listener: one poll's worth of delivery outcomes becomes one
+ * INSERT batch on one connection instead of one JPA save (and one transaction)
+ * per row. Rows that collide with the unique_delivery constraint — the same
+ * attempt redelivered after a rebalance — are skipped by ON CONFLICT.
+ *
+ * FIXED: Except when the new row is SENT and the stored one is not. DO NOTHING
+ * used to drop that SENT row behind an earlier FAILED one for the same
+ * attempt and channel, so the dedupe check (which looks for SENT) missed the
+ * delivery and the notification was sent again. The stored row is now
+ * upgraded to SENT instead.
+ *
+ * If the batch as a whole is rejected (e.g. one row violates a CHECK
+ * constraint) the rows are retried one by one so a single bad row does not
+ * drop the rest of the poll's audit trail.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NotificationLogBatchWriter {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO notification_logs
+                (id, tenant_id, request_id, channel, status, retry_attempt,
+                 provider_latency_ms, error_message, error_details, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (tenant_id, request_id, channel, retry_attempt) DO UPDATE
+                SET status              = EXCLUDED.status,
+                    provider_latency_ms = EXCLUDED.provider_latency_ms,
+                    error_message       = EXCLUDED.error_message,
+                    error_details       = EXCLUDED.error_details,
+                    updated_at          = EXCLUDED.updated_at
+                WHERE EXCLUDED.status = 'SENT' AND notification_logs.status <> 'SENT'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertAll(List<NotificationLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, logs, logs.size(), this::bind);
+            log.debug("Inserted {} notification log rows in one batch", logs.size());
+        } catch (DataAccessException e) {
+            log.warn("Batch insert of {} log rows failed, falling back to row-by-row: {}",
+                    logs.size(), e.getMessage());
+            insertIndividually(logs);
+        }
+    }
+
+    private void insertIndividually(List<NotificationLog> logs) {
+        for (NotificationLog row : logs) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, row));
+            } catch (DataAccessException e) {
+                log.error("Dropping notification log row: requestId={}, channel={}, error={}",
+                        row.getRequestId(), row.getChannel(), e.getMessage());
+            }
+        }
+    }
+
+    private void bind(PreparedStatement ps, NotificationLog row) throws SQLException {
+        Instant createdAt = row.getCreatedAt() != null ? row.getCreatedAt() : Instant.now();
+
+        ps.setObject(1, row.getId() != null ? row.getId() : UUID.randomUUID());
+        ps.setObject(2, row.getTenantId());
+        ps.setObject(3, row.getRequestId());
+        ps.setString(4, row.getChannel());
+        ps.setString(5, row.getStatus());
+        ps.setInt(6, row.getRetryAttempt());
+        if (row.getProviderLatencyMs() != null) {
+            ps.setLong(7, row.getProviderLatencyMs());
+        } else {
+            ps.setNull(7, Types.BIGINT);
+        }
+        ps.setString(8, row.getErrorMessage());
+        ps.setString(9, row.getErrorDetails());
+        ps.setTimestamp(10, Timestamp.from(createdAt));
+        ps.setTimestamp(11, Timestamp.from(createdAt));
+    }
+}
@@ -2,15 +2,22 @@ package com.notifly.worker.service;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.data.redis.core.RedisTemplate;
 import lombok.extern.slf4j.Slf4j;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notifly.common.domain.entity.*;
 import com.notifly.common.domain.repository.*;
 import com.notifly.common.context.CorrelationIdContext;
 import com.notifly.common.dto.KafkaNotificationEvent;
+import com.notifly.common.enums.NotificationPriority;
+import com.notifly.common.metrics.PipelineStage;
+import com.notifly.common.metrics.StageTimers;
+import com.notifly.worker.service.sender.ChannelConcurrencyLimiter;
 import com.notifly.worker.service.sender.ChannelSender;
 import com.notifly.worker.service.sender.SendResult;
+import com.notifly.worker.service.template.TemplateRenderException;
+import com.notifly.worker.service.template.TemplateRenderer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
 
 import java.time.Instant;
 import java.util.*;
@@ -23,7 +30,7 @@ import java.util.stream.Collectors;
  *  1. REMOVED republishForRetry() from this service.
  *     Original called it here AND in NotificationEventListener, causing DOUBLE retry routing.
  *     Retry routing is now exclusively the listener's responsibility.
- *     This class only processes and returns true (success) or false (failure).
+ *     This class only processes and returns the outcome (see item 5).
  *
  *  2. FIXED: Event channels were completely ignored — always used policy fallback order.
  *     Now properly intersects event.getChannels() with policy fallback order.
@@ -34,41 +41,76 @@ import java.util.stream.Collectors;
  *
  *  4. FIXED: Status was written as "SUCCESS" but AdminController queries for "SENT".
  *     Standardized on "SENT" to match what the dashboard queries expect.
+ *
+ *  5. Returns a {@link DeliveryOutcome} instead of a boolean. SendResult already
+ *     distinguished permanent from transient failures, but the boolean threw
+ *     that away and invalid recipients went through every retry tier. A
+ *     PERMANENT outcome is recorded in failed_notifications immediately
+ *     (recordPermanentFailure) with the provider's error code.
+ *
+ *  6. processNotification is no longer @Transactional. It used to hold a pooled
+ *     connection (HIKARI_MAX_POOL_SIZE, default 5) across the SendGrid / Twilio /
+ *     FCM call, so 10 consumer threads queued on the pool whenever a provider
+ *     slowed down. Now: configuration comes from DeliveryConfigCache (a miss is
+ *     its own short read), the provider call runs with no connection held, and
+ *     the logs are written afterwards in one short JDBC batch.
+ *
+ *  7. Suppression list. A recipient the provider rejected outright (unregistered
+ *     FCM token, invalid/unsubscribed number, bounced address) used to be retried
+ *     on every later notification. It is now added to SuppressionList, and later
+ *     sends to it on that channel are skipped before the provider is called
+ *     (permanent failure RECIPIENT_SUPPRESSED; the next fallback channel is tried).
+ *
+ *  8. Stage timings (StageTimers): policy resolution, template render, provider
+ *     call and persistence are recorded per channel and tenant plan, next to the
+ *     Kafka transit and dedupe stages timed by the listeners.
+ *
+ *  9. Provider circuit breakers (ChannelConcurrencyLimiter). A channel whose
+ *     circuit is open is skipped before rendering with a retryable CIRCUIT_OPEN,
+ *     so delivery falls through to the next channel in resolveChannelOrder at
+ *     once instead of queueing behind a provider that is timing out.
  */
 @Slf4j
 @Service
 public class NotificationProcessorService {
 
     private final NotificationLogRepository logRepository;
+    private final NotificationLogBatchWriter logBatchWriter;
     private final FailedNotificationRepository failedRepository;
-    private final EventChannelPolicyRepository channelPolicyRepository;
-    private final NotificationTemplateRepository templateRepository;
     private final UserChannelPreferenceRepository preferencesRepository;
-    private final RedisTemplate<String, String> redisTemplate;
+    private final DeliveryConfigCache configCache;
+    private final TemplateRenderer templateRenderer;
     private final ObjectMapper objectMapper;
     private final Map<String, ChannelSender> channelSenders;
+    private final ChannelConcurrencyLimiter concurrencyLimiter;
+    private final SuppressionList suppressionList;
+    private final StageTimers stageTimers;
 
     private static final int MAX_ATTEMPTS = 5;
-    // Template cache TTL in seconds
-    private static final long TEMPLATE_CACHE_TTL_SECONDS = 300;
 
     public NotificationProcessorService(
             NotificationLogRepository logRepository,
+            NotificationLogBatchWriter logBatchWriter,
             FailedNotificationRepository failedRepository,
-            EventChannelPolicyRepository channelPolicyRepository,
-            NotificationTemplateRepository templateRepository,
             UserChannelPreferenceRepository preferencesRepository,
-            RedisTemplate<String, String> redisTemplate,
+            DeliveryConfigCache configCache,
+            TemplateRenderer templateRenderer,
             ObjectMapper objectMapper,
-            List<ChannelSender> senders) {
+            List<ChannelSender> senders,
+            ChannelConcurrencyLimiter concurrencyLimiter,
+            SuppressionList suppressionList,
+            StageTimers stageTimers) {
 
         this.logRepository = logRepository;
+        this.logBatchWriter = logBatchWriter;
         this.failedRepository = failedRepository;
-        this.channelPolicyRepository = channelPolicyRepository;
-        this.templateRepository = templateRepository;
         this.preferencesRepository = preferencesRepository;
-        this.redisTemplate = redisTemplate;
+        this.configCache = configCache;
+        this.templateRenderer = templateRenderer;
         this.objectMapper = objectMapper;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.suppressionList = suppressionList;
+        this.stageTimers = stageTimers;
         this.channelSenders = new HashMap<>();
         senders.forEach(sender -> channelSenders.put(sender.getChannel(), sender));
     }
@@ -91,17 +133,88 @@ public class NotificationProcessorService {
         return false;
     }
 
+    /**
+     * Batch variant of {@link #hasSuccessfulDelivery} for the batch listener.
+     * Resolves a whole poll with a single query.
+     *
+     * @return request ids (of the given events) that already have a SENT log
+     *         entry for the same tenant on one of the event's channels
+     */
+    public Set<UUID> findAlreadyDelivered(List<KafkaNotificationEvent> events) {
+        if (events.isEmpty()) {
+            return Set.of();
+        }
+
+        Map<UUID, KafkaNotificationEvent> byRequestId = new HashMap<>();
+        events.forEach(e -> byRequestId.put(e.getRequestId(), e));
+
+        Set<UUID> delivered = new HashSet<>();
+        for (Object[] row : logRepository.findSentDeliveries(byRequestId.keySet())) {
+            UUID tenantId = (UUID) row[0];
+            UUID requestId = (UUID) row[1];
+            String channel = (String) row[2];
+
+            KafkaNotificationEvent event = byRequestId.get(requestId);
+            if (event != null && event.getTenantId().equals(tenantId)
+                    && event.getChannels() != null && event.getChannels().contains(channel)) {
+                delivered.add(requestId);
+            }
+        }
+        return delivered;
+    }
+
     /**
      * Process a notification event through its channels.
      *
      * FIXES:
      *  - No longer calls republishForRetry() internally (was double-routing retries)
      *  - Properly uses event.getChannels() intersected with policy fallback order
-     *  - Returns true on first successful channel delivery
-     *  - Returns false if all channels fail (caller handles retry routing)
+     *  - DELIVERED on first successful channel delivery
+     *  - RETRYABLE / PERMANENT if all channels fail (caller handles routing)
+     *
+     * Deliberately not @Transactional — see fix 6. No connection is held while
+     * deliver() waits on the provider; the rows are persisted once it returns.
      */
-    @Transactional
-    public boolean processNotification(KafkaNotificationEvent event, int retryAttempt) {
+    public DeliveryOutcome processNotification(KafkaNotificationEvent event, int retryAttempt) {
+        List<NotificationLog> logs = new ArrayList<>();
+        DeliveryOutcome outcome = deliver(event, retryAttempt, logs);
+        long persistStart = System.nanoTime();
+        logBatchWriter.insertAll(logs);
+        stageTimers.recordSince(PipelineStage.PERSIST, firstChannel(event), planOf(event), persistStart);
+        return outcome;
+    }
+
+    /** Tenant plan for metric tags — cached, no I/O on the hot path. */
+    public String planOf(KafkaNotificationEvent event) {
+        return configCache.tenantPlan(event.getTenantId());
+    }
+
+    /**
+     * Time from publication to consumption. First attempts only — a retry's
+     * publish time is its own, and tier delays would swamp the broker's share.
+     * Uses the record's producer timestamp (set when the outbox published it);
+     * falls back to the event's createdAt, which then includes the outbox wait.
+     */
+    public void recordKafkaTransit(ConsumerRecord<?, ?> record, KafkaNotificationEvent event) {
+        long from = record.timestampType() == TimestampType.CREATE_TIME && record.timestamp() > 0
+                ? record.timestamp() : event.getCreatedAt();
+        if (from > 0) {
+            stageTimers.recordMillis(PipelineStage.KAFKA_TRANSIT, firstChannel(event), planOf(event),
+                    System.currentTimeMillis() - from);
+        }
+    }
+
+    /**
+     * Delivery without persistence: tries the channels in order and appends the
+     * resulting notification_logs rows to {@code logSink} instead of saving them.
+     *
+     * The batch listener collects the rows of a whole poll and writes them in one
+     * JDBC batch (NotificationLogBatchWriter); the single-record path writes its
+     * own rows the same way at the end of {@link #processNotification}.
+     *
+     * Must not be called inside a transaction: provider calls happen here.
+     */
+    public DeliveryOutcome deliver(KafkaNotificationEvent event, int retryAttempt, List<NotificationLog> logSink) {
         String correlationId = CorrelationIdContext.getCorrelationId();
 
         log.info("[{}] Processing: requestId={}, channels={}, attempt={}",
@@ -111,16 +224,21 @@ public class NotificationProcessorService {
         // FIXED: Build ordered channel list that respects BOTH:
         //  - The channels the caller explicitly requested (event.getChannels())
         //  - The fallback priority order from the policy
+        String plan = planOf(event);
+        long policyStart = System.nanoTime();
         List<String> orderedChannels = resolveChannelOrder(event);
+        stageTimers.recordSince(PipelineStage.POLICY, firstChannel(event), plan, policyStart);
 
         if (orderedChannels.isEmpty()) {
             log.warn("[{}] No valid channels to attempt for requestId={}", correlationId, event.getRequestId());
             // FIXED: Persist failure — don't silently drop
-            persistFailure(event, List.of(), "No valid channels configured", retryAttempt);
-            return false;
+            logSink.add(failureLog(event, List.of(), "No valid channels configured", retryAttempt));
+            return DeliveryOutcome.permanent(null, "NO_CHANNELS", "No valid channels configured");
         }
 
-        String lastError = null;
+        // A transient failure on any channel makes the whole attempt worth retrying
+        DeliveryOutcome lastRetryable = null;
+        DeliveryOutcome lastPermanent = null;
 
         for (String channel : orderedChannels) {
             ChannelSender sender = channelSenders.get(channel);
@@ -130,45 +248,94 @@ public class NotificationProcessorService {
             }
 
             try {
-                // Fetch and render template (with Redis caching)
+                String recipient = resolveRecipient(event, channel);
+                if (suppressionList.isSuppressed(event.getTenantId(), channel, recipient)) {
+                    // Known-bad address — skip the provider and render nothing
+                    lastPermanent = DeliveryOutcome.permanent(channel, "RECIPIENT_SUPPRESSED",
+                            "Recipient is on the " + channel + " suppression list");
+                    log.info("[{}] Skipped suppressed recipient on channel {}: requestId={}",
+                            correlationId, channel, event.getRequestId());
+                    logSink.add(channelFailureLog(event, channel, lastPermanent.getErrorMessage(), retryAttempt));
+                    continue;
+                }
+
+                if (concurrencyLimiter.isOpen(channel)) {
+                    // Provider is failing — fall through to the next channel without rendering
+                    lastRetryable = DeliveryOutcome.retryable(channel, "CIRCUIT_OPEN",
+                            channel + " provider circuit is open");
+                    log.warn("[{}] Skipped channel {} with open circuit: requestId={}",
+                            correlationId, channel, event.getRequestId());
+                    logSink.add(channelFailureLog(event, channel, lastRetryable.getErrorMessage(), retryAttempt));
+                    continue;
+                }
+
+                // Template and policy come from the in-process DeliveryConfigCache
+                long renderStart = System.nanoTime();
                 String content = resolveContent(event, channel);
                 String subject = resolveSubject(event, channel);
-                String recipient = resolveRecipient(event, channel);
+                stageTimers.recordSince(PipelineStage.RENDER, channel, plan, renderStart);
 
-                SendResult result = sender.send(recipient, subject, content);
+                long providerStart = System.nanoTime();
+                SendResult result = concurrencyLimiter.send(sender, recipient, subject, content,
+                        NotificationPriority.isHigh(event.getPriority()));
+                stageTimers.recordSince(PipelineStage.PROVIDER, channel, plan, providerStart);
 
                 if (result.isSuccess()) {
                     // FIXED: Write "SENT" not "SUCCESS" to match what AdminController queries
-                    persistSuccess(event, channel, result, retryAttempt);
+                    logSink.add(successLog(event, channel, result, retryAttempt));
                     log.info("[{}] Sent via {}: requestId={}, latency={}ms",
                             correlationId, channel, event.getRequestId(), result.getLatencyMs());
-                    return true; // Success — stop trying other channels
+                    return DeliveryOutcome.delivered(); // Success — stop trying other channels
                 }
 
-                lastError = result.getErrorMessage();
-                log.warn("[{}] Channel {} failed: {}", correlationId, channel, lastError);
-                persistChannelFailure(event, channel, lastError, retryAttempt);
+                if (result.isRecipientRejected()) {
+                    suppressionList.suppress(event.getTenantId(), channel, recipient,
+                            result.getErrorCode(), result.getErrorMessage());
+                }
+
+                DeliveryOutcome failure = DeliveryOutcome.ofFailure(channel, result);
+                if (failure.isPermanent()) {
+                    lastPermanent = failure;
+                } else {
+                    lastRetryable = failure;
+                }
+                log.warn("[{}] Channel {} failed ({}): {}", correlationId, channel,
+                        failure.getStatus(), result.getErrorMessage());
+                logSink.add(channelFailureLog(event, channel, result.getErrorMessage(), retryAttempt));
+
+            } catch (TemplateRenderException e) {
+                // Same template + payload will fail the same way on every retry
+                lastPermanent = DeliveryOutcome.permanent(channel, "TEMPLATE_RENDER_ERROR", e.getMessage());
+                log.warn("[{}] Template render failed on channel {}: {}", correlationId, channel, e.getMessage());
+                logSink.add(channelFailureLog(event, channel, e.getMessage(), retryAttempt));
 
             } catch (Exception e) {
-                lastError = e.getMessage();
+                lastRetryable = DeliveryOutcome.retryable(channel, e.getClass().getSimpleName(), e.getMessage());
                 log.error("[{}] Exception on channel {}: {}", correlationId, channel, e.getMessage(), e);
-                persistChannelFailure(event, channel, e.getMessage(), retryAttempt);
+                logSink.add(channelFailureLog(event, channel, e.getMessage(), retryAttempt));
             }
         }
 
         // All channels failed
         log.error("[{}] All channels failed for requestId={}", correlationId, event.getRequestId());
         // FIXED: Don't call republishForRetry here — listener handles routing
-        return false;
+        if (lastRetryable != null) {
+            return lastRetryable;
+        }
+        if (lastPermanent != null) {
+            return lastPermanent;
+        }
+        return DeliveryOutcome.permanent(null, "NO_SENDER",
+                "No sender registered for channels " + String.join(",", orderedChannels));
     }
 
     /**
-     * Persist a successful delivery to notification_logs.
+     * Build the notification_logs row for a successful delivery.
      * FIXED: Uses status "SENT" (not "SUCCESS") to match AdminController queries.
      */
-    private void persistSuccess(KafkaNotificationEvent event, String channel,
-                                SendResult result, int attempt) {
-        NotificationLog log = NotificationLog.builder()
+    private NotificationLog successLog(KafkaNotificationEvent event, String channel,
+                                       SendResult result, int attempt) {
+        return NotificationLog.builder()
                 .tenantId(event.getTenantId())
                 .requestId(event.getRequestId())
                 .channel(channel)
@@ -177,15 +344,14 @@ public class NotificationProcessorService {
                 .providerLatencyMs(result.getLatencyMs())
                 .createdAt(Instant.now())
                 .build();
-        logRepository.save(log);
     }
 
     /**
-     * Persist a per-channel failure (not DLQ — still retrying).
+     * Build the row for a per-channel failure (not DLQ — still retrying).
      */
-    private void persistChannelFailure(KafkaNotificationEvent event, String channel,
-                                        String errorMessage, int attempt) {
-        NotificationLog logEntry = NotificationLog.builder()
+    private NotificationLog channelFailureLog(KafkaNotificationEvent event, String channel,
+                                              String errorMessage, int attempt) {
+        return NotificationLog.builder()
                 .tenantId(event.getTenantId())
                 .requestId(event.getRequestId())
                 .channel(channel)
@@ -194,15 +360,14 @@ public class NotificationProcessorService {
                 .errorDetails(errorMessage)
                 .createdAt(Instant.now())
                 .build();
-        logRepository.save(logEntry);
     }
 
     /**
-     * Persist a top-level failure (no channels succeeded, no channels to try).
+     * Build the row for a top-level failure (no channels succeeded, no channels to try).
      */
-    private void persistFailure(KafkaNotificationEvent event, List<String> channels,
-                                 String error, int attempt) {
-        NotificationLog logEntry = NotificationLog.builder()
+    private NotificationLog failureLog(KafkaNotificationEvent event, List<String> channels,
+                                       String error, int attempt) {
+        return NotificationLog.builder()
                 .tenantId(event.getTenantId())
                 .requestId(event.getRequestId())
                 .channel(channels.isEmpty() ? "NONE" : String.join(",", channels))
@@ -211,7 +376,6 @@ public class NotificationProcessorService {
                 .errorDetails(error)
                 .createdAt(Instant.now())
                 .build();
-        logRepository.save(logEntry);
     }
 
     /**
@@ -233,6 +397,38 @@ public class NotificationProcessorService {
         log.error("Notification moved to DLQ: requestId={}", event.getRequestId());
     }
 
+    /**
+     * Persist permanent failures straight to failed_notifications, skipping the
+     * retry tiers. One saveAll for the batch listener's whole poll.
+     */
+    @Transactional
+    public void recordPermanentFailures(List<KafkaNotificationEvent> events, List<DeliveryOutcome> outcomes,
+                                        int attempt) {
+        List<FailedNotification> rows = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            KafkaNotificationEvent event = events.get(i);
+            DeliveryOutcome outcome = outcomes.get(i);
+            rows.add(FailedNotification.builder()
+                    .tenantId(event.getTenantId())
+                    .requestId(event.getRequestId())
+                    .channel(outcome.getChannel() != null ? outcome.getChannel() : String.join(",", event.getChannels()))
+                    .recipient(event.getRecipient())
+                    .retryAttempt(attempt)
+                    .errorCode(outcome.getErrorCode())
+                    .errorMessage(outcome.getErrorMessage())
+                    .createdAt(Instant.now())
+                    .build());
+            log.error("[{}] Permanent failure, moved to DLQ without retrying: requestId={}, code={}",
+                    event.getCorrelationId(), event.getRequestId(), outcome.getErrorCode());
+        }
+        failedRepository.saveAll(rows);
+    }
+
+    @Transactional
+    public void recordPermanentFailure(KafkaNotificationEvent event, DeliveryOutcome outcome, int attempt) {
+        recordPermanentFailures(List.of(event), List.of(outcome), attempt);
+    }
+
     /**
      * FIXED: Build the ordered list of channels to attempt.
      *
@@ -253,17 +449,16 @@ public class NotificationProcessorService {
         }
 
         // Get policy fallback order for this event type
-        EventChannelPolicy policy = channelPolicyRepository
-                .findByTenantIdAndEventType(event.getTenantId(), event.getEventType())
-                .orElse(null);
+        Optional<List<String>> fallbackOrder =
+                configCache.fallbackOrder(event.getTenantId(), event.getEventType());
 
-        if (policy == null || policy.getFallbackOrder() == null || policy.getFallbackOrder().isEmpty()) {
+        if (fallbackOrder.isEmpty()) {
             // No policy — use requested channels as-is
             return new ArrayList<>(requestedChannels);
         }
 
         // Policy-ordered subset of requested channels
-        List<String> ordered = policy.getFallbackOrder().stream()
+        List<String> ordered = fallbackOrder.get().stream()
                 .filter(requestedChannels::contains)
                 .collect(Collectors.toCollection(ArrayList::new));
 
@@ -276,46 +471,30 @@ public class NotificationProcessorService {
     }
 
     /**
-     * Fetch template content from DB with Redis caching.
+     * Render the active template for the channel against this event's payload.
+     *
+     * FIXED: The Redis cache stored the RENDERED content under a key without the
+     * payload, so the second recipient got the first recipient's message. The
+     * template itself is now cached (DeliveryConfigCache) and rendered per message.
      */
     private String resolveContent(KafkaNotificationEvent event, String channel) {
-        String cacheKey = "template:" + event.getTenantId() + ":" + event.getEventType() + ":" + channel;
-        String cached = redisTemplate.opsForValue().get(cacheKey);
-        if (cached != null) return cached;
-
-        return templateRepository
-                .findFirstByTenantIdAndChannelAndIsActiveTrue(event.getTenantId(), channel)
-                .map(t -> {
-                    String content = renderTemplate(t.getContent(), event.getPayload());
-                    redisTemplate.opsForValue().set(cacheKey, content,
-                        java.time.Duration.ofSeconds(TEMPLATE_CACHE_TTL_SECONDS));
-                    return content;
-                })
+        return configCache.activeTemplate(event.getTenantId(), channel)
+                .map(t -> templateRenderer.render(t, event.getPayload()))
                 .orElse(event.getContent() != null ? event.getContent() : "");
     }
 
     private String resolveSubject(KafkaNotificationEvent event, String channel) {
-        return templateRepository
-                .findFirstByTenantIdAndChannelAndIsActiveTrue(event.getTenantId(), channel)
-                .map(t -> t.getSubject() != null ? t.getSubject() : event.getSubject())
+        return configCache.activeTemplate(event.getTenantId(), channel)
+                .map(t -> t.subject() != null ? t.subject() : event.getSubject())
                 .orElse(event.getSubject() != null ? event.getSubject() : "Notification");
     }
 
+    private static String firstChannel(KafkaNotificationEvent event) {
+        return event.getChannels() == null || event.getChannels().isEmpty() ? "UNKNOWN" : event.getChannels().get(0);
+    }
+
     private String resolveRecipient(KafkaNotificationEvent event, String channel) {
         // Could look up user preferences by userId for channel-specific addresses
         return event.getRecipient() != null ? event.getRecipient() : "";
     }
-
-    /**
-     * Simple Handlebars-style template renderer.
-     * Replaces {{key}} with values from the payload map.
-     */
-    private String renderTemplate(String template, Map<String, Object> payload) {
-        if (template == null || payload == null) return template;
-        String result = template;
-        for (Map.Entry<String, Object> entry : payload.entrySet()) {
-            result = result.replace("{{" + entry.getKey() + "}}", String.valueOf(entry.getValue()));
-        }
-        return result;
-    }
 }
@@ -0,0 +1,80 @@
+package com.notifly.worker.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Holds retry-topic records until their backoff has elapsed.
+ *
+ * A record on notification.retry.Ns becomes due at (record timestamp + N seconds).
+ * The record timestamp is stamped by the producer when the listener routes the
+ * failed event to the retry topic, i.e. it is the moment the retry was scheduled.
+ *
+ * If a record is not yet due, its partition is paused on the owning listener
+ * container and a resume is scheduled for the due time. The caller must then
+ * nack the record (zero sleep) so the container seeks back to it; nothing else
+ * is fetched from that partition until it is resumed. The consumer thread never
+ * sleeps and keeps serving the other partitions, and records within a partition
+ * stay in order — later records on the same partition are never due earlier.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetryDelayGate {
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final TaskScheduler taskScheduler;
+
+    private final Map<TopicPartition, ScheduledFuture<?>> scheduledResumes = new ConcurrentHashMap<>();
+
+    /**
+     * @return true if the record may be processed now; false if its partition
+     *         has been paused and the record must be nacked for redelivery
+     */
+    public boolean isDue(String listenerId, ConsumerRecord<String, String> record, Duration delay) {
+        if (record.timestamp() < 0) {
+            return true; // No timestamp on the record — nothing to wait for
+        }
+
+        long dueAt = record.timestamp() + delay.toMillis();
+        if (dueAt <= System.currentTimeMillis()) {
+            return true;
+        }
+
+        MessageListenerContainer container = registry.getListenerContainer(listenerId);
+        if (container == null) {
+            log.warn("No listener container '{}' — processing retry without delay", listenerId);
+            return true;
+        }
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        container.pausePartition(partition);
+        scheduledResumes.compute(partition, (tp, existing) -> {
+            if (existing != null) {
+                existing.cancel(false);
+            }
+            return taskScheduler.schedule(() -> resume(container, tp), Instant.ofEpochMilli(dueAt));
+        });
+
+        log.debug("Retry not due yet, paused {} for {}ms (offset {})",
+                partition, dueAt - System.currentTimeMillis(), record.offset());
+        return false;
+    }
+
+    private void resume(MessageListenerContainer container, TopicPartition partition) {
+        scheduledResumes.remove(partition);
+        container.resumePartition(partition);
+    }
+}
@@ -0,0 +1,73 @@
+package com.notifly.worker.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notifly.common.config.KafkaTopics;
+import com.notifly.common.dto.KafkaNotificationEvent;
+import com.notifly.worker.metrics.NotificationMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Routes a failed event to the next retry tier (or the DLQ when exhausted).
+ *
+ * Only the listener layer calls this — NotificationEventListener for single
+ * records and NotificationBatchDispatcher for batch polls. The processor never
+ * routes (see the double-routing fix in NotificationEventListener).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetryRouter {
+
+    public static final int MAX_ATTEMPTS = 5;
+
+    // Maps retry attempt number → topic to send to on NEXT failure
+    private static final Map<Integer, String> RETRY_TOPIC_MAP = Map.of(
+        1, KafkaTopics.NOTIFICATION_RETRY_1S,
+        2, KafkaTopics.NOTIFICATION_RETRY_5S,
+        3, KafkaTopics.NOTIFICATION_RETRY_30S,
+        4, KafkaTopics.NOTIFICATION_DLQ
+    );
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final NotificationMetrics metrics;
+
+    /**
+     * Route to the appropriate retry topic based on attempt number.
+     * If max attempts reached, routes to DLQ.
+     *
+     * @return the producer future; callers that commit offsets only after the
+     *         hand-off is durable (batch mode) wait on it
+     */
+    public CompletableFuture<SendResult<String, String>> route(KafkaNotificationEvent event, int currentAttempt)
+            throws JsonProcessingException {
+        int nextAttempt = currentAttempt + 1;
+        String targetTopic;
+
+        if (nextAttempt >= MAX_ATTEMPTS) {
+            targetTopic = KafkaTopics.NOTIFICATION_DLQ;
+        } else {
+            targetTopic = RETRY_TOPIC_MAP.getOrDefault(nextAttempt, KafkaTopics.NOTIFICATION_DLQ);
+        }
+
+        event.setRetryCount(nextAttempt);
+        String serialized = objectMapper.writeValueAsString(event);
+        CompletableFuture<SendResult<String, String>> future =
+            kafkaTemplate.send(targetTopic, event.getRequestId().toString(), serialized);
+
+        if (!KafkaTopics.NOTIFICATION_DLQ.equals(targetTopic)) {
+            metrics.incrementRetry(event.getChannels().isEmpty() ? null : event.getChannels().get(0), nextAttempt);
+        }
+        log.warn("[{}] Routed to {} (attempt {} of {}): requestId={}",
+            event.getCorrelationId(), targetTopic, nextAttempt, MAX_ATTEMPTS, event.getRequestId());
+        return future;
+    }
+}
@@ -0,0 +1,200 @@
+package com.notifly.worker.service;
+
+import com.notifly.common.config.RedisChannels;
+import com.notifly.common.domain.entity.SuppressedRecipient;
+import com.notifly.common.domain.repository.SuppressedRecipientRepository;
+import com.notifly.common.domain.repository.SuppressedRecipientRepository.SuppressionKey;
+import com.notifly.worker.metrics.NotificationMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-tenant, per-channel list of recipients the provider has permanently
+ * rejected (see SendResult.recipientRejected). The processor checks it before
+ * every send, so a dead FCM token or unsubscribed number costs one lookup
+ * instead of a provider round trip each time it is targeted again.
+ *
+ * Three tiers:
+ *   1. In-memory Bloom filter — answers "definitely not suppressed" for the
+ *      vast majority of sends with no I/O.
+ *   2. Redis set suppression:{tenantId}:{channel} — confirms a filter hit
+ *      (SISMEMBER), so a false positive or an entry cleared through the admin
+ *      API never blocks a send.
+ *   3. Postgres suppressed_recipients — source of truth, listed and cleared
+ *      by the admin API.
+ *
+ * A new entry is published on RedisChannels.SUPPRESSIONS as its filter hash
+ * (no address leaves the worker) so every node adds it to its filter at once.
+ * {@link #rebuild} reloads the filter from Postgres every
+ * notifly.worker.suppression.rebuild-interval-ms — dropping bits of cleared
+ * entries and restoring Redis members that were lost.
+ *
+ * Fails open: if Redis is unavailable a filter hit is treated as deliverable.
+ */
+@Slf4j
+@Component
+public class SuppressionList implements MessageListener {
+
+    private static final int REBUILD_PAGE_SIZE = 5_000;
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    private final SuppressedRecipientRepository repository;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final NotificationMetrics metrics;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+
+    private volatile RecipientBloomFilter filter;
+    /** Filter being rebuilt; new entries go into it too so the swap cannot lose them. */
+    private volatile RecipientBloomFilter rebuilding;
+
+    public SuppressionList(
+            SuppressedRecipientRepository repository,
+            RedisTemplate<String, String> redisTemplate,
+            RedisMessageListenerContainer listenerContainer,
+            NotificationMetrics metrics,
+            @Value("${notifly.worker.suppression.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${notifly.worker.suppression.false-positive-rate:0.01}") double falsePositiveRate) {
+
+        this.repository = repository;
+        this.redisTemplate = redisTemplate;
+        this.metrics = metrics;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new RecipientBloomFilter(expectedInsertions, falsePositiveRate);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisChannels.SUPPRESSIONS));
+    }
+
+    /** True if sends to this recipient on this channel should be skipped. */
+    public boolean isSuppressed(UUID tenantId, String channel, String recipient) {
+        String normalized = SuppressedRecipient.normalize(channel, recipient);
+        if (tenantId == null || normalized == null
+                || !filter.mightContain(filterKey(tenantId, channel, normalized))) {
+            return false;
+        }
+        try {
+            boolean suppressed = Boolean.TRUE.equals(redisTemplate.opsForSet()
+                    .isMember(SuppressedRecipient.redisKey(tenantId, channel), normalized));
+            if (suppressed) {
+                metrics.incrementSuppressed(channel);
+            }
+            return suppressed;
+        } catch (RuntimeException e) {
+            log.warn("SuppressionList: Redis unavailable, not suppressing tenant={} channel={}: {}",
+                    tenantId, channel, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Record a recipient the provider rejected. Postgres first — if that fails
+     * nothing is suppressed, and the next rejection tries again.
+     */
+    public void suppress(UUID tenantId, String channel, String recipient, String reasonCode, String reason) {
+        String normalized = SuppressedRecipient.normalize(channel, recipient);
+        if (tenantId == null || normalized == null || normalized.isEmpty()) {
+            return;
+        }
+        try {
+            repository.insertIgnore(tenantId, channel, normalized, reasonCode, reason);
+        } catch (RuntimeException e) {
+            log.error("SuppressionList: Failed to store suppression tenant={} channel={}: {}",
+                    tenantId, channel, e.getMessage());
+            return;
+        }
+
+        long key = filterKey(tenantId, channel, normalized);
+        addToFilters(key);
+        try {
+            redisTemplate.opsForSet().add(SuppressedRecipient.redisKey(tenantId, channel), normalized);
+            redisTemplate.convertAndSend(RedisChannels.SUPPRESSIONS, Long.toHexString(key));
+        } catch (RuntimeException e) {
+            // The next rebuild restores the Redis member and every node's filter
+            log.warn("SuppressionList: Stored but could not publish suppression tenant={} channel={}: {}",
+                    tenantId, channel, e.getMessage());
+        }
+        log.info("SuppressionList: Suppressed {} recipient for tenant={} ({})", channel, tenantId, reasonCode);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            addToFilters(Long.parseUnsignedLong(new String(message.getBody(), StandardCharsets.UTF_8), 16));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed suppression message: {}", e.getMessage());
+        }
+    }
+
+    /** Reload the filter from Postgres and re-add every entry to Redis. */
+    @Scheduled(fixedDelayString = "${notifly.worker.suppression.rebuild-interval-ms:900000}",
+               initialDelayString = "${notifly.worker.suppression.rebuild-initial-delay-ms:0}")
+    public void rebuild() {
+        RecipientBloomFilter rebuilt = new RecipientBloomFilter(expectedInsertions, falsePositiveRate);
+        this.rebuilding = rebuilt;
+        long count = 0;
+        try {
+            UUID after = MIN_UUID;
+            List<SuppressionKey> page;
+            do {
+                page = repository.findKeysAfter(after, REBUILD_PAGE_SIZE);
+                Map<String, List<String>> members = new HashMap<>();
+                for (SuppressionKey k : page) {
+                    rebuilt.put(filterKey(k.getTenantId(), k.getChannel(), k.getRecipient()));
+                    members.computeIfAbsent(SuppressedRecipient.redisKey(k.getTenantId(), k.getChannel()),
+                            x -> new ArrayList<>()).add(k.getRecipient());
+                    after = k.getId();
+                }
+                restoreRedis(members);
+                count += page.size();
+            } while (page.size() == REBUILD_PAGE_SIZE);
+        } catch (RuntimeException e) {
+            log.error("SuppressionList: Rebuild failed, keeping the current filter: {}", e.getMessage());
+            return;
+        } finally {
+            this.rebuilding = null;
+        }
+
+        this.filter = rebuilt;
+        if (count > expectedInsertions) {
+            log.warn("SuppressionList: {} entries exceed expected-insertions={}, false positives will rise",
+                    count, expectedInsertions);
+        }
+        log.info("SuppressionList: Rebuilt filter with {} entries", count);
+    }
+
+    private void addToFilters(long key) {
+        filter.put(key);
+        RecipientBloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(key);
+        }
+    }
+
+    private void restoreRedis(Map<String, List<String>> members) {
+        try {
+            members.forEach((key, recipients) ->
+                    redisTemplate.opsForSet().add(key, recipients.toArray(String[]::new)));
+        } catch (RuntimeException e) {
+            log.warn("SuppressionList: Could not restore Redis sets during rebuild: {}", e.getMessage());
+        }
+    }
+
+    private static long filterKey(UUID tenantId, String channel, String normalizedRecipient) {
+        return RecipientBloomFilter.hash(tenantId + "|" + channel + "|" + normalizedRecipient);
+    }
+}
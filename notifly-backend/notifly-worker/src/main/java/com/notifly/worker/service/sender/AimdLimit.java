@@ -0,0 +1,130 @@
+package com.notifly.worker.service.sender;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive in-flight limit for one provider (AIMD — additive increase,
+ * multiplicative decrease, as in TCP congestion control).
+ *
+ *  - A call that completes within the latency target without a transient
+ *    failure raises the limit by 1/limit — about +1 per limit's worth of
+ *    healthy calls — but only while the limit is actually being used.
+ *  - A transient failure (timeout, 5xx, connection error) or a call slower
+ *    than the target multiplies the limit by the backoff ratio, at most once
+ *    per latency-target interval so one burst of slow calls that were all in
+ *    flight together counts as one congestion signal.
+ *
+ * Callers past the limit wait (fairly, on virtual threads) up to a timeout.
+ *
+ * Priority lane: the top {@code reservedForPriority} slots of the limit are
+ * usable only by priority callers, and a freed slot goes to a waiting priority
+ * caller before any normal one — an OTP never queues behind bulk sends.
+ */
+final class AimdLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyTargetNanos;
+    private final int reservedForPriority;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    private final Condition priorityAvailable = lock.newCondition();
+
+    private volatile double limit;
+    private volatile int inFlight;
+    private int priorityWaiting;
+    private long lastDecreaseNanos;
+
+    AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyTargetMs,
+              int reservedForPriority) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = Math.min(Math.max(backoffRatio, 0.1), 0.99);
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMs);
+        this.reservedForPriority = Math.max(0, reservedForPriority);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.lastDecreaseNanos = System.nanoTime() - latencyTargetNanos;
+    }
+
+    /** @return false if no slot became free within {@code timeoutNanos} */
+    boolean acquire(long timeoutNanos, boolean priority) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            if (priority) {
+                priorityWaiting++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        remaining = priorityAvailable.awaitNanos(remaining);
+                    }
+                } finally {
+                    // Normal waiters may be blocked only on priorityWaiting (e.g. this
+                    // waiter timed out while slots were free) — wake them
+                    if (--priorityWaiting == 0) {
+                        available.signalAll();
+                    }
+                }
+            } else {
+                while (priorityWaiting > 0 || inFlight >= Math.max(1, (int) limit - reservedForPriority)) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param latencyNanos how long the provider call took
+     * @param dropped      the call failed transiently (or threw)
+     */
+    void release(long latencyNanos, boolean dropped) {
+        lock.lock();
+        try {
+            int before = (int) limit;
+            boolean saturated = inFlight >= before / 2;
+            inFlight--;
+
+            long now = System.nanoTime();
+            if (dropped || latencyNanos > latencyTargetNanos) {
+                if (now - lastDecreaseNanos >= latencyTargetNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = now;
+                }
+            } else if (saturated) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+
+            if ((int) limit > before) {
+                priorityAvailable.signalAll();
+                available.signalAll();
+            } else if (priorityWaiting > 0) {
+                priorityAvailable.signal();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight;
+    }
+}
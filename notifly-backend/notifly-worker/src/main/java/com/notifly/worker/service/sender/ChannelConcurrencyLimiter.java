@@ -0,0 +1,218 @@
+package com.notifly.worker.service.sender;
+
+import com.notifly.worker.metrics.NotificationMetrics;
+import com.notifly.worker.metrics.NotificationMetrics.CircuitState;
+import com.notifly.worker.metrics.NotificationMetrics.ProviderRejection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of in-flight provider calls per channel.
+ *
+ * With virtual-thread dispatch a single worker can start hundreds of sends at
+ * once; without a bound one busy poll could open that many connections to
+ * SendGrid/Twilio/FCM and trip their rate limits. Callers block (cheaply, on a
+ * virtual thread) until a slot for the channel is free.
+ *
+ * FIXED: The bound used to be a fixed semaphore of max-in-flight-per-channel.
+ * When a provider slowed down every slot filled with calls waiting out their
+ * timeouts, and the whole batch stalled behind them. Each channel now has:
+ *
+ *  - an adaptive limit ({@link AimdLimit}) between limit.min and
+ *    max-in-flight-per-channel, grown while calls are fast and successful and
+ *    cut when they time out, fail transiently or exceed limit.latency-target-ms.
+ *    A caller that gets no slot within limit.acquire-timeout-ms gives up with
+ *    a transient PROVIDER_SATURATED failure.
+ *  - a circuit breaker ({@link CircuitBreaker}) that opens once the transient
+ *    failure rate over the last circuit.window-size calls reaches
+ *    circuit.failure-rate-threshold. While open, sends fail immediately with a
+ *    transient CIRCUIT_OPEN, so the processor moves on to the next channel in
+ *    the fallback order instead of waiting on a provider that is down.
+ *
+ * Before taking a slot a send takes a token from ProviderRateGovernor, so the
+ * cluster as a whole stays under the provider's account rate. A send that gets
+ * no token within its max-wait fails with a transient PROVIDER_RATE_LIMITED;
+ * like PROVIDER_SATURATED it never reaches the provider and does not count
+ * against the adaptive limit or the circuit.
+ *
+ * Priority lane: HIGH-priority sends (see NotificationPriority) may use
+ * priority.reserved-provider-slots slots at the top of each channel's limit
+ * that normal sends cannot, and are handed freed slots first. They likewise
+ * take rate tokens from a reserved share of the bucket, without queueing
+ * behind normal sends.
+ *
+ * Exported per channel: notifly_provider_in_flight,
+ * notifly_provider_concurrency_limit, notifly_provider_circuit_state and the
+ * transition / rejection counters (see NotificationMetrics).
+ */
+@Slf4j
+@Component
+public class ChannelConcurrencyLimiter {
+
+    private final NotificationMetrics metrics;
+    private final ProviderRateGovernor rateGovernor;
+    private final int maxInFlightPerChannel;
+    private final int initialLimit;
+    private final int minLimit;
+    private final long latencyTargetMs;
+    private final double backoffRatio;
+    private final long acquireTimeoutNanos;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationMs;
+    private final int halfOpenCalls;
+    private final int reservedForPriority;
+
+    private final Map<String, ProviderGate> gates = new ConcurrentHashMap<>();
+
+    public ChannelConcurrencyLimiter(
+            @Value("${notifly.worker.dispatch.max-in-flight-per-channel:100}") int maxInFlightPerChannel,
+            @Value("${notifly.worker.provider.limit.initial:20}") int initialLimit,
+            @Value("${notifly.worker.provider.limit.min:2}") int minLimit,
+            @Value("${notifly.worker.provider.limit.latency-target-ms:2000}") long latencyTargetMs,
+            @Value("${notifly.worker.provider.limit.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${notifly.worker.provider.limit.acquire-timeout-ms:10000}") long acquireTimeoutMs,
+            @Value("${notifly.worker.provider.circuit.window-size:50}") int windowSize,
+            @Value("${notifly.worker.provider.circuit.minimum-calls:20}") int minimumCalls,
+            @Value("${notifly.worker.provider.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${notifly.worker.provider.circuit.open-duration-ms:30000}") long openDurationMs,
+            @Value("${notifly.worker.provider.circuit.half-open-calls:3}") int halfOpenCalls,
+            @Value("${notifly.worker.priority.reserved-provider-slots:2}") int reservedForPriority,
+            NotificationMetrics metrics,
+            ProviderRateGovernor rateGovernor) {
+        this.metrics = metrics;
+        this.rateGovernor = rateGovernor;
+        this.maxInFlightPerChannel = maxInFlightPerChannel;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.latencyTargetMs = latencyTargetMs;
+        this.backoffRatio = backoffRatio;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMs = openDurationMs;
+        this.halfOpenCalls = halfOpenCalls;
+        this.reservedForPriority = reservedForPriority;
+
+        for (NotificationMetrics.MetricChannel channel : NotificationMetrics.MetricChannel.values()) {
+            if (channel != NotificationMetrics.MetricChannel.UNKNOWN) {
+                ProviderGate gate = gate(channel.name());
+                metrics.monitorInFlight(channel.name(), gate.limit::inFlight);
+                metrics.monitorProvider(channel.name(), gate.limit::limit, gate.breaker::state);
+            }
+        }
+    }
+
+    /**
+     * Runs {@code sender.send(...)} while holding one of the channel's slots.
+     * Returns a transient CIRCUIT_OPEN / PROVIDER_SATURATED failure without
+     * calling the provider when the channel cannot take the call.
+     */
+    public SendResult send(ChannelSender sender, String recipient, String subject, String content) {
+        return send(sender, recipient, subject, content, false);
+    }
+
+    /** @param priority HIGH-priority send — may use the reserved slots and is served first */
+    public SendResult send(ChannelSender sender, String recipient, String subject, String content,
+                           boolean priority) {
+        String channel = sender.getChannel();
+        ProviderGate gate = gate(channel);
+        CircuitState admitted = gate.breaker.tryAcquire();
+        if (admitted == null) {
+            return circuitOpen(channel);
+        }
+        SendResult refused = acquireSlot(sender, gate, admitted, priority);
+        if (refused != null) {
+            return refused;
+        }
+
+        long start = System.nanoTime();
+        SendResult result = null;
+        try {
+            result = sender.send(recipient, subject, content);
+            return result;
+        } finally {
+            gate.complete(admitted, System.nanoTime() - start, result);
+        }
+    }
+
+    /**
+     * True while the channel's circuit is open — the processor skips rendering
+     * for it. A half-open circuit reports false so trial calls can go through.
+     */
+    public boolean isOpen(String channel) {
+        ProviderGate gate = gates.get(channel);
+        return gate != null && gate.breaker.isCoolingDown();
+    }
+
+    public int inFlight(String channel) {
+        ProviderGate gate = gates.get(channel);
+        return gate == null ? 0 : gate.limit.inFlight();
+    }
+
+    /** Rate token, then in-flight slot. Null when the call may proceed. */
+    private SendResult acquireSlot(ChannelSender sender, ProviderGate gate, CircuitState admitted,
+                                   boolean priority) {
+        String channel = sender.getChannel();
+        boolean paced;
+        boolean acquired;
+        try {
+            paced = rateGovernor.acquire(channel, sender.rateLimitKey(), priority);
+            acquired = paced && gate.limit.acquire(acquireTimeoutNanos, priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            gate.breaker.cancel(admitted);
+            return SendResult.failed("INTERRUPTED", "Interrupted while waiting for a " + channel + " slot");
+        }
+        if (!paced) {
+            gate.breaker.cancel(admitted);
+            metrics.incrementProviderRejected(channel, ProviderRejection.RATE_LIMITED);
+            return SendResult.failed("PROVIDER_RATE_LIMITED",
+                    "No " + channel + " send token within " + rateGovernor.maxWaitMs() + "ms");
+        }
+        if (!acquired) {
+            gate.breaker.cancel(admitted);
+            metrics.incrementProviderRejected(channel, ProviderRejection.SATURATED);
+            return SendResult.failed("PROVIDER_SATURATED",
+                    "No " + channel + " slot free within " + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + "ms");
+        }
+        return null;
+    }
+
+    private SendResult circuitOpen(String channel) {
+        metrics.incrementProviderRejected(channel, ProviderRejection.CIRCUIT_OPEN);
+        return SendResult.failed("CIRCUIT_OPEN", channel + " provider circuit is open");
+    }
+
+    private ProviderGate gate(String channel) {
+        return gates.computeIfAbsent(channel, c -> new ProviderGate(
+                new AimdLimit(initialLimit, minLimit, maxInFlightPerChannel, backoffRatio, latencyTargetMs,
+                        reservedForPriority),
+                new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openDurationMs, halfOpenCalls,
+                        state -> {
+                            metrics.incrementCircuitTransition(c, state);
+                            if (state == CircuitState.OPEN) {
+                                log.warn("ChannelConcurrencyLimiter: {} circuit opened for {}ms", c, openDurationMs);
+                            } else {
+                                log.info("ChannelConcurrencyLimiter: {} circuit {}", c, state);
+                            }
+                        })));
+    }
+
+    private record ProviderGate(AimdLimit limit, CircuitBreaker breaker) {
+
+        /** A null result means the sender threw — counted as a transient failure. */
+        void complete(CircuitState admitted, long latencyNanos, SendResult result) {
+            boolean failed = result == null || (!result.isSuccess() && !result.isPermanentFailure());
+            limit.release(latencyNanos, failed);
+            breaker.onResult(admitted, failed);
+        }
+    }
+}
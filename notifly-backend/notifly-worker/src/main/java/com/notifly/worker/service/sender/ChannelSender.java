@@ -2,8 +2,19 @@ package com.notifly.worker.service.sender;
 
 /**
  * Interface for channel-specific senders
+ *
+ * ADDED: rateLimitKey — the credential the provider meters sends against, used
+ * by ProviderRateGovernor to share one rate budget across workers.
  */
 public interface ChannelSender {
     SendResult send(String recipient, String subject, String content);
     String getChannel();
+
+    /**
+     * Identifies the provider account whose send rate applies (never the secret
+     * itself). Null when the sender is not calling a real provider — dev mode.
+     */
+    default String rateLimitKey() {
+        return null;
+    }
 }
@@ -0,0 +1,130 @@
+package com.notifly.worker.service.sender;
+
+import com.notifly.worker.metrics.NotificationMetrics.CircuitState;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Count-based circuit breaker for one provider.
+ *
+ *  CLOSED    — calls pass; the last windowSize outcomes are kept. Once at
+ *              least minimumCalls are recorded and the transient-failure rate
+ *              reaches the threshold, the circuit OPENs.
+ *  OPEN      — calls are rejected without touching the provider for
+ *              openDuration, then the circuit goes HALF_OPEN.
+ *  HALF_OPEN — up to halfOpenCalls trial calls pass. All succeeding closes the
+ *              circuit (fresh window); any failure opens it again.
+ *
+ * Permanent failures (provider 4xx) count as successes: the provider answered.
+ */
+final class CircuitBreaker {
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final Consumer<CircuitState> onTransition;
+
+    private CircuitState state = CircuitState.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAtNanos;
+    private int trialsInFlight;
+    private int trialSuccesses;
+
+    CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openDurationMs,
+                   int halfOpenCalls, Consumer<CircuitState> onTransition) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.min(Math.max(1, minimumCalls), window.length);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.onTransition = onTransition;
+    }
+
+    /**
+     * @return the state the call was admitted under (CLOSED or HALF_OPEN —
+     *         pass it back to {@link #onResult} / {@link #cancel}), or null if rejected
+     */
+    synchronized CircuitState tryAcquire() {
+        if (state == CircuitState.OPEN) {
+            if (System.nanoTime() - openedAtNanos < openDurationNanos) {
+                return null;
+            }
+            transition(CircuitState.HALF_OPEN);
+        }
+        if (state == CircuitState.HALF_OPEN) {
+            if (trialsInFlight >= halfOpenCalls) {
+                return null;
+            }
+            trialsInFlight++;
+        }
+        return state;
+    }
+
+    synchronized void onResult(CircuitState admittedIn, boolean failure) {
+        if (admittedIn == CircuitState.HALF_OPEN) {
+            if (state != CircuitState.HALF_OPEN) {
+                return;
+            }
+            trialsInFlight--;
+            if (failure) {
+                transition(CircuitState.OPEN);
+            } else if (++trialSuccesses >= halfOpenCalls) {
+                transition(CircuitState.CLOSED);
+            }
+            return;
+        }
+        if (state != CircuitState.CLOSED) {
+            return; // Result of a call admitted before the circuit opened
+        }
+        if (recorded == window.length && window[next]) {
+            failures--;
+        }
+        window[next] = failure;
+        next = (next + 1) % window.length;
+        recorded = Math.min(recorded + 1, window.length);
+        if (failure) {
+            failures++;
+        }
+        if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+            transition(CircuitState.OPEN);
+        }
+    }
+
+    /** The admitted call never reached the provider. */
+    synchronized void cancel(CircuitState admittedIn) {
+        if (admittedIn == CircuitState.HALF_OPEN && state == CircuitState.HALF_OPEN) {
+            trialsInFlight--;
+        }
+    }
+
+    synchronized CircuitState state() {
+        return state;
+    }
+
+    /** Open and still inside openDuration — the next call would be rejected. */
+    synchronized boolean isCoolingDown() {
+        return state == CircuitState.OPEN && System.nanoTime() - openedAtNanos < openDurationNanos;
+    }
+
+    private void transition(CircuitState to) {
+        state = to;
+        switch (to) {
+            case OPEN -> openedAtNanos = System.nanoTime();
+            case HALF_OPEN -> {
+                trialsInFlight = 0;
+                trialSuccesses = 0;
+            }
+            case CLOSED -> {
+                next = 0;
+                recorded = 0;
+                failures = 0;
+            }
+        }
+        onTransition.accept(to);
+    }
+}
@@ -4,11 +4,14 @@ import com.sendgrid.*;
 import com.sendgrid.helpers.mail.Mail;
 import com.sendgrid.helpers.mail.objects.Content;
 import com.sendgrid.helpers.mail.objects.Email;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
 
 /**
  * Email sender using SendGrid.
@@ -23,6 +26,14 @@ import java.io.IOException;
  *
  * Falls back to no-op mode (logs only) when api-key is blank —
  * so local development without a SendGrid account still works.
+ *
+ * FIXED: A new SendGrid client (and HTTP connection pool) was created per
+ * message. One client is now built at startup and shared.
+ *
+ * FIXED: Every 4xx was a permanent failure, which now skips the retry tiers.
+ * A 429 (api() does not back off) or a 401/403 from a rotated or wrong API key
+ * says nothing about the notification, so those are transient: they retry and
+ * count against the circuit breaker instead of failing every send in flight.
  */
 @Slf4j
 @Component
@@ -37,68 +48,123 @@ public class EmailSender implements ChannelSender {
     @Value("${notifly.sendgrid.from-name:Notifly}")
     private String fromName;
 
+    private SendGrid sendGrid;
+
     @Override
     public String getChannel() {
         return "EMAIL";
     }
 
+    /** SendGrid meters per API key — keyed by a fingerprint, not the key. */
+    @Override
+    public String rateLimitKey() {
+        return sendGrid == null ? null
+                : UUID.nameUUIDFromBytes(sendGridApiKey.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (sendGridApiKey != null && !sendGridApiKey.isBlank()) {
+            // One client for the lifetime of the worker — it is thread-safe and
+            // owns the connection pool.
+            sendGrid = new SendGrid(sendGridApiKey);
+        }
+    }
+
     @Override
     public SendResult send(String recipient, String subject, String content) {
         long startMs = System.currentTimeMillis();
 
+        SendResult rejected = precheck(recipient, subject, startMs);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        try {
+            Response response = sendGrid.api(buildRequest(recipient, subject, content));
+            return classify(response, recipient, startMs);
+
+        } catch (IOException e) {
+            log.error("EmailSender: IOException sending to={}: {}", recipient, e.getMessage());
+            return SendResult.failed("SENDGRID_IO_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * Validation and dev-mode short-circuit.
+     * Returns null when the request should go to SendGrid.
+     */
+    private SendResult precheck(String recipient, String subject, long startMs) {
         // Validate before calling API
         if (!isValidEmail(recipient)) {
             log.warn("EmailSender: Invalid email address: {}", recipient);
-            return SendResult.failed("INVALID_EMAIL", "Invalid email format: " + recipient);
+            return SendResult.permanentFailure("INVALID_EMAIL", "Invalid email format: " + recipient);
         }
 
         // No-op mode for local development
-        if (sendGridApiKey == null || sendGridApiKey.isBlank()) {
+        if (sendGrid == null) {
             log.info("[DEV MODE] EmailSender: Would send to={}, subject={}", recipient, subject);
             return SendResult.success(System.currentTimeMillis() - startMs);
         }
+        return null;
+    }
 
-        try {
-            Email from = new Email(fromEmail, fromName);
-            Email to   = new Email(recipient);
+    private Request buildRequest(String recipient, String subject, String content) throws IOException {
+        Email from = new Email(fromEmail, fromName);
+        Email to   = new Email(recipient);
 
-            // Support both HTML and plain text
-            String contentType = isHtml(content) ? "text/html" : "text/plain";
-            Content emailContent = new Content(contentType, content);
+        // Support both HTML and plain text
+        String contentType = isHtml(content) ? "text/html" : "text/plain";
+        Content emailContent = new Content(contentType, content);
 
-            Mail mail = new Mail(from, subject != null ? subject : "(No Subject)", to, emailContent);
+        Mail mail = new Mail(from, subject != null ? subject : "(No Subject)", to, emailContent);
 
-            SendGrid sg = new SendGrid(sendGridApiKey);
-            Request request = new Request();
-            request.setMethod(Method.POST);
-            request.setEndpoint("mail/send");
-            request.setBody(mail.build());
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/send");
+        request.setBody(mail.build());
+        return request;
+    }
 
-            Response response = sg.api(request);
-            long latencyMs = System.currentTimeMillis() - startMs;
+    private SendResult classify(Response response, String recipient, long startMs) {
+        long latencyMs = System.currentTimeMillis() - startMs;
 
-            // SendGrid returns 202 for successful queuing
-            if (response.getStatusCode() == 202) {
-                log.info("EmailSender: Sent to={}, latency={}ms", recipient, latencyMs);
-                return SendResult.success(latencyMs);
-            }
+        // SendGrid returns 202 for successful queuing
+        if (response.getStatusCode() == 202) {
+            log.info("EmailSender: Sent to={}, latency={}ms", recipient, latencyMs);
+            return SendResult.success(latencyMs);
+        }
 
-            // Classify error types for smart retry decisions
-            String errorMsg = "SendGrid error: HTTP " + response.getStatusCode() + " — " + response.getBody();
-            log.error("EmailSender: Failed to={}, status={}", recipient, response.getStatusCode());
+        // Classify error types for smart retry decisions
+        String errorMsg = "SendGrid error: HTTP " + response.getStatusCode() + " — " + response.getBody();
+        log.error("EmailSender: Failed to={}, status={}", recipient, response.getStatusCode());
 
-            // 4xx = permanent failure (bad email, bounced, etc.) — don't retry
-            if (response.getStatusCode() >= 400 && response.getStatusCode() < 500) {
-                return SendResult.permanentFailure("SENDGRID_CLIENT_ERROR_" + response.getStatusCode(), errorMsg);
-            }
-            // 5xx = transient — retry
-            return SendResult.failed("SENDGRID_SERVER_ERROR_" + response.getStatusCode(), errorMsg);
+        // 429 = throttled, 401/403 = our credentials — provider-side, retry
+        int status = response.getStatusCode();
+        if (status == 429) {
+            return SendResult.failed("SENDGRID_RATE_LIMITED", errorMsg);
+        }
+        if (status == 401 || status == 403) {
+            return SendResult.failed("SENDGRID_AUTH_ERROR_" + status, errorMsg);
+        }
 
-        } catch (IOException e) {
-            long latencyMs = System.currentTimeMillis() - startMs;
-            log.error("EmailSender: IOException sending to={}: {}", recipient, e.getMessage());
-            return SendResult.failed("SENDGRID_IO_ERROR", e.getMessage());
+        // Other 4xx = permanent failure (bad email, bounced, etc.) — don't retry
+        if (response.getStatusCode() >= 400 && response.getStatusCode() < 500) {
+            String code = "SENDGRID_CLIENT_ERROR_" + response.getStatusCode();
+            // Only a 400 whose error points at the recipient field condemns the address;
+            // 401/403/413 and payload errors would otherwise suppress good recipients
+            return isRecipientError(response)
+                    ? SendResult.recipientRejected(code, errorMsg)
+                    : SendResult.permanentFailure(code, errorMsg);
         }
+        // 5xx = transient — retry
+        return SendResult.failed("SENDGRID_SERVER_ERROR_" + response.getStatusCode(), errorMsg);
+    }
+
+    private static boolean isRecipientError(Response response) {
+        String body = response.getBody();
+        return response.getStatusCode() == 400 && body != null
+                && body.contains("personalizations") && body.contains(".to");
     }
 
     private boolean isValidEmail(String email) {
@@ -0,0 +1,248 @@
+package com.notifly.worker.service.sender;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cluster-wide outbound rate limit per provider credential.
+ *
+ * Providers meter sends per account (SendGrid API key, Twilio sender number,
+ * FCM project). Each worker used to call them independently, so N workers
+ * together overshot the account rate and learned about it from 429s —
+ * reported as transient failures that fed the retry tiers and, since
+ * ChannelConcurrencyLimiter, the circuit breaker.
+ *
+ * Now every send first takes a token from a bucket shared by all workers:
+ *
+ *  - Redis hash provider_rate:{channel}:{credential} holds the bucket (tokens,
+ *    last refill), refilled at notifly.worker.provider.rate.{channel}-per-second
+ *    up to burst-seconds worth. One Lua call leases a block of tokens
+ *    atomically, on Redis time so worker clocks do not matter.
+ *  - Each worker prefetches a small block (at most a tenth of a second's worth,
+ *    capped at lease-size) and hands tokens out locally, so most sends cost no
+ *    Redis call. Unused tokens lapse after lease-ttl-ms and are not returned.
+ *  - An empty bucket returns the exact wait until the next token; the caller
+ *    sleeps (cheaply, on a virtual thread) and tries again, up to max-wait-ms.
+ *
+ * FIXED: The sleep used to happen while holding the credential's lease lock,
+ * and on the record listener's Kafka consumer thread: with 50 records a poll
+ * and fallback channels each waiting up to max-wait-ms, one poll could exceed
+ * max.poll.interval.ms during a blast and trigger a rebalance. The lock is now
+ * released before sleeping, and off virtual threads the wait is capped at
+ * consumer-thread-max-wait-ms — a record still throttled then fails with a
+ * transient PROVIDER_RATE_LIMITED and goes to the retry tiers, like
+ * CIRCUIT_OPEN.
+ *
+ * Senders without a credential (dev mode) are not metered. Fails open: if
+ * Redis is unavailable sends are not paced.
+ *
+ * FIXED: HIGH-priority sends used to queue on the same fair local lock as bulk
+ * sends, so while a bulk send drained the bucket an OTP waited behind it for up
+ * to max-wait-ms, or failed with PROVIDER_RATE_LIMITED. Now
+ * notifly.worker.priority.reserved-rate-share of each bucket is held back from
+ * normal leases: they stop at that floor, and priority sends take single
+ * tokens from it directly in Redis without touching the local lease or its lock.
+ */
+@Slf4j
+@Component
+public class ProviderRateGovernor {
+
+    /**
+     * KEYS[1] = bucket hash
+     * ARGV[1] = tokens per ms, ARGV[2] = capacity, ARGV[3] = tokens wanted,
+     * ARGV[4] = tokens the caller must leave in the bucket (the priority reserve)
+     * Returns {granted, waitMs} — waitMs is the time until one token is available.
+     */
+    private static final String LEASE_LUA =
+        "local t   = redis.call('TIME')\n" +
+        "local now = tonumber(t[1]) * 1000 + tonumber(t[2]) / 1000\n" +
+        "local rate     = tonumber(ARGV[1])\n" +
+        "local capacity = tonumber(ARGV[2])\n" +
+        "local state  = redis.call('HMGET', KEYS[1], 't', 'ts')\n" +
+        "local tokens = tonumber(state[1] or ARGV[2])\n" +
+        "local last   = tonumber(state[2] or now)\n" +
+        "if now > last then tokens = math.min(capacity, tokens + (now - last) * rate) end\n" +
+        "local floor    = tonumber(ARGV[4])\n" +
+        "local grant = math.min(tonumber(ARGV[3]), math.floor(tokens - floor))\n" +
+        "if grant < 1 then\n" +
+        "  return {0, math.ceil((1 + floor - tokens) / rate)}\n" +
+        "end\n" +
+        "redis.call('HSET', KEYS[1], 't', string.format('%.6f', tokens - grant), 'ts', string.format('%.3f', now))\n" +
+        "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000)\n" +
+        "return {grant, 0}";
+
+    /** Tokens this worker holds for one credential, usable until expiresAtNanos. */
+    private static final class LocalLease {
+        final ReentrantLock lock = new ReentrantLock(true);
+        int remaining;
+        long expiresAtNanos;
+    }
+
+    /** priorityReserve: tokens normal leases leave in the bucket. */
+    private record Rate(double perSecond, double capacity, double priorityReserve) {
+        double perMs() {
+            return perSecond / 1000.0;
+        }
+    }
+
+    private final RedisTemplate<String, String> redisTemplate;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> leaseScript;
+    private final boolean enabled;
+    private final Map<String, Rate> rates;
+    private final int leaseSize;
+    private final long leaseTtlNanos;
+    private final long maxWaitNanos;
+    private final long consumerThreadMaxWaitNanos;
+    private final Map<String, LocalLease> leases = new ConcurrentHashMap<>();
+
+    public ProviderRateGovernor(
+            RedisTemplate<String, String> redisTemplate,
+            @Value("${notifly.worker.provider.rate.enabled:true}") boolean enabled,
+            @Value("${notifly.worker.provider.rate.email-per-second:100}") double emailPerSecond,
+            @Value("${notifly.worker.provider.rate.sms-per-second:10}") double smsPerSecond,
+            @Value("${notifly.worker.provider.rate.push-per-second:1000}") double pushPerSecond,
+            @Value("${notifly.worker.provider.rate.burst-seconds:1}") double burstSeconds,
+            @Value("${notifly.worker.provider.rate.lease-size:20}") int leaseSize,
+            @Value("${notifly.worker.provider.rate.lease-ttl-ms:1000}") long leaseTtlMs,
+            @Value("${notifly.worker.provider.rate.max-wait-ms:5000}") long maxWaitMs,
+            @Value("${notifly.worker.provider.rate.consumer-thread-max-wait-ms:200}") long consumerThreadMaxWaitMs,
+            @Value("${notifly.worker.priority.reserved-rate-share:0.2}") double reservedShare) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.rates = Map.of(
+                "EMAIL", rate(emailPerSecond, burstSeconds, reservedShare),
+                "SMS", rate(smsPerSecond, burstSeconds, reservedShare),
+                "PUSH", rate(pushPerSecond, burstSeconds, reservedShare));
+        this.leaseSize = Math.max(1, leaseSize);
+        this.leaseTtlNanos = TimeUnit.MILLISECONDS.toNanos(leaseTtlMs);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.consumerThreadMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(consumerThreadMaxWaitMs);
+
+        this.leaseScript = new DefaultRedisScript<>();
+        this.leaseScript.setScriptText(LEASE_LUA);
+        this.leaseScript.setResultType(List.class);
+    }
+
+    /**
+     * Take one send token for {@code credential} on {@code channel}, waiting
+     * up to max-wait-ms for the shared bucket to refill.
+     *
+     * @param credential ChannelSender.rateLimitKey(); null means unmetered
+     * @param priority   HIGH-priority send — may use the reserved share and
+     *                   does not queue behind normal sends on this worker
+     * @return false if no token became available in time
+     */
+    public boolean acquire(String channel, String credential, boolean priority) throws InterruptedException {
+        Rate rate = rates.get(channel);
+        if (!enabled || credential == null || rate == null) {
+            return true;
+        }
+        String key = "provider_rate:" + channel + ":" + credential;
+        long deadline = System.nanoTime() + maxWaitNanos();
+        if (priority) {
+            return acquirePriority(key, rate, deadline);
+        }
+        LocalLease lease = leases.computeIfAbsent(key, k -> new LocalLease());
+
+        while (true) {
+            long waitNanos;
+            if (!lease.lock.tryLock(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            try {
+                long now = System.nanoTime();
+                if (lease.remaining > 0 && now < lease.expiresAtNanos) {
+                    lease.remaining--;
+                    return true;
+                }
+
+                // Prefetch at most a tenth of a second's worth so a slow
+                // provider's tokens are not stranded on one worker
+                int wanted = Math.min(leaseSize, Math.max(1, (int) (rate.perSecond() / 10)));
+                long[] granted = lease(key, rate, wanted, rate.priorityReserve());
+                if (granted == null) {
+                    return true; // Redis unavailable — fail open
+                }
+                if (granted[0] > 0) {
+                    lease.remaining = (int) granted[0] - 1;
+                    lease.expiresAtNanos = now + leaseTtlNanos;
+                    return true;
+                }
+                waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, granted[1]));
+            } finally {
+                lease.lock.unlock();
+            }
+
+            // Sleep without the lock, so other senders can use tokens that arrive meanwhile
+            if (System.nanoTime() + waitNanos > deadline) {
+                return false;
+            }
+            Thread.sleep(Duration.ofNanos(waitNanos));
+        }
+    }
+
+    /** One token straight from Redis, down to an empty bucket. */
+    private boolean acquirePriority(String key, Rate rate, long deadline) throws InterruptedException {
+        while (true) {
+            long[] granted = lease(key, rate, 1, 0);
+            if (granted == null || granted[0] > 0) {
+                return true; // Redis unavailable fails open, as for normal sends
+            }
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, granted[1]));
+            if (System.nanoTime() + waitNanos > deadline) {
+                return false;
+            }
+            Thread.sleep(Duration.ofNanos(waitNanos));
+        }
+    }
+
+    /** The wait bound that applies to the calling thread. */
+    public long maxWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos());
+    }
+
+    /**
+     * Virtual threads (batch dispatch) may wait max-wait-ms. A platform thread
+     * here is a Kafka consumer thread running the record listener: a long
+     * sleep there, per record and per fallback channel, adds up across a poll
+     * towards max.poll.interval.ms, so it only waits consumer-thread-max-wait-ms
+     * and a throttled record goes to the retry tiers instead.
+     */
+    private long maxWaitNanos() {
+        return Thread.currentThread().isVirtual() ? maxWaitNanos : consumerThreadMaxWaitNanos;
+    }
+
+    /** @return {granted, waitMs}, or null if Redis could not be reached */
+    private long[] lease(String key, Rate rate, int wanted, double floor) {
+        try {
+            List<?> result = redisTemplate.execute(leaseScript, List.of(key),
+                    String.valueOf(rate.perMs()), String.valueOf(rate.capacity()), String.valueOf(wanted),
+                    String.valueOf(floor));
+            if (result == null || result.size() < 2) {
+                return null;
+            }
+            return new long[] {((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue()};
+        } catch (RuntimeException e) {
+            log.debug("ProviderRateGovernor: Redis unavailable, not pacing {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Rate rate(double perSecond, double burstSeconds, double reservedShare) {
+        double perSec = Math.max(0.001, perSecond);
+        double capacity = Math.max(1.0, perSec * burstSeconds);
+        double share = Math.min(0.9, Math.max(0.0, reservedShare));
+        return new Rate(perSec, capacity, Math.floor(capacity * share));
+    }
+}
@@ -53,7 +53,9 @@ public class PushSender implements ChannelSender {
     private String serviceAccountPath;
 
     private GoogleCredentials credentials;
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .build();
     private final ObjectMapper objectMapper = new ObjectMapper();
     private boolean fcmEnabled = false;
 
@@ -87,10 +89,39 @@ public class PushSender implements ChannelSender {
         return "PUSH";
     }
 
+    /** FCM meters per project. */
+    @Override
+    public String rateLimitKey() {
+        return fcmEnabled ? projectId : null;
+    }
+
     @Override
     public SendResult send(String recipient, String subject, String content) {
         long startMs = System.currentTimeMillis();
 
+        SendResult rejected = precheck(recipient, subject, startMs);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        try {
+            HttpResponse<String> response = httpClient.send(buildRequest(recipient, subject, content),
+                HttpResponse.BodyHandlers.ofString());
+            return classify(response, recipient, startMs);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SendResult.failed("FCM_INTERRUPTED", "Request interrupted");
+        } catch (Exception e) {
+            return unexpectedError(recipient, e);
+        }
+    }
+
+    /**
+     * Validation and dev-mode short-circuit.
+     * Returns null when the request should go to FCM.
+     */
+    private SendResult precheck(String recipient, String subject, long startMs) {
         if (!isValidDeviceToken(recipient)) {
             log.warn("PushSender: Invalid device token: {}", recipient);
             return SendResult.permanentFailure("INVALID_DEVICE_TOKEN",
@@ -102,61 +133,59 @@ public class PushSender implements ChannelSender {
             log.info("[DEV MODE] PushSender: Would send to={}, title={}", recipient, subject);
             return SendResult.success(System.currentTimeMillis() - startMs);
         }
+        return null;
+    }
 
-        try {
-            String accessToken = getAccessToken();
-            String url = String.format(FCM_SEND_URL, projectId);
-
-            // Build FCM v1 message payload
-            Map<String, Object> notification = Map.of(
-                "title", subject != null ? subject : "",
-                "body",  content != null ? content : ""
-            );
-            Map<String, Object> message = Map.of(
-                "token",        recipient,
-                "notification", notification
-            );
-            String body = objectMapper.writeValueAsString(Map.of("message", message));
-
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("Authorization", "Bearer " + accessToken)
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(body))
-                .build();
-
-            HttpResponse<String> response = httpClient.send(request,
-                HttpResponse.BodyHandlers.ofString());
-
-            long latencyMs = System.currentTimeMillis() - startMs;
+    private HttpRequest buildRequest(String recipient, String subject, String content) throws IOException {
+        String accessToken = getAccessToken();
+        String url = String.format(FCM_SEND_URL, projectId);
+
+        // Build FCM v1 message payload
+        Map<String, Object> notification = Map.of(
+            "title", subject != null ? subject : "",
+            "body",  content != null ? content : ""
+        );
+        Map<String, Object> message = Map.of(
+            "token",        recipient,
+            "notification", notification
+        );
+        String body = objectMapper.writeValueAsString(Map.of("message", message));
+
+        return HttpRequest.newBuilder()
+            .uri(URI.create(url))
+            .header("Authorization", "Bearer " + accessToken)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
 
-            if (response.statusCode() == 200) {
-                log.info("PushSender: Sent to={}, latency={}ms", recipient, latencyMs);
-                return SendResult.success(latencyMs);
-            }
+    private SendResult classify(HttpResponse<String> response, String recipient, long startMs) {
+        long latencyMs = System.currentTimeMillis() - startMs;
 
-            String errorBody = response.body();
-            log.error("PushSender: FCM error status={}, body={}", response.statusCode(), errorBody);
+        if (response.statusCode() == 200) {
+            log.info("PushSender: Sent to={}, latency={}ms", recipient, latencyMs);
+            return SendResult.success(latencyMs);
+        }
 
-            // 404 = token not found / app uninstalled — permanent failure, don't retry
-            if (response.statusCode() == 404) {
-                return SendResult.permanentFailure("FCM_TOKEN_NOT_FOUND",
-                    "Device token not registered (app uninstalled?): " + errorBody);
-            }
-            // 400 = malformed request — permanent
-            if (response.statusCode() == 400) {
-                return SendResult.permanentFailure("FCM_BAD_REQUEST", errorBody);
-            }
-            // 429 / 500 / 503 = transient — worth retrying
-            return SendResult.failed("FCM_ERROR_" + response.statusCode(), errorBody);
+        String errorBody = response.body();
+        log.error("PushSender: FCM error status={}, body={}", response.statusCode(), errorBody);
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return SendResult.failed("FCM_INTERRUPTED", "Request interrupted");
-        } catch (Exception e) {
-            log.error("PushSender: Unexpected error sending to={}: {}", recipient, e.getMessage(), e);
-            return SendResult.failed("FCM_UNEXPECTED_ERROR", e.getMessage());
+        // 404 = token not found / app uninstalled — permanent failure, don't retry
+        if (response.statusCode() == 404) {
+            return SendResult.recipientRejected("FCM_TOKEN_NOT_FOUND",
+                "Device token not registered (app uninstalled?): " + errorBody);
+        }
+        // 400 = malformed request — permanent
+        if (response.statusCode() == 400) {
+            return SendResult.permanentFailure("FCM_BAD_REQUEST", errorBody);
         }
+        // 429 / 500 / 503 = transient — worth retrying
+        return SendResult.failed("FCM_ERROR_" + response.statusCode(), errorBody);
+    }
+
+    private SendResult unexpectedError(String recipient, Throwable e) {
+        log.error("PushSender: Unexpected error sending to={}: {}", recipient, e.getMessage(), e);
+        return SendResult.failed("FCM_UNEXPECTED_ERROR", e.getMessage());
     }
 
     /**
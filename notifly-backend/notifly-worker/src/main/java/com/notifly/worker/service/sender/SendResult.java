@@ -8,6 +8,11 @@ import lombok.Getter;
  * ADDED: permanentFailure type — for cases like invalid email/phone where
  * retrying will never help. The listener can use this to skip retry topics
  * and go directly to DLQ, saving time and reducing noise in retry logs.
+ *
+ * ADDED: recipientRejected — a permanent failure where the provider rejected
+ * the address itself (unregistered device token, invalid/unsubscribed number,
+ * bounced email). Only these feed the suppression list; other permanent
+ * failures (bad credentials, malformed payload) say nothing about the recipient.
  */
 @Getter
 public class SendResult {
@@ -22,26 +27,34 @@ public class SendResult {
     private final long latencyMs;
     private final String errorCode;
     private final String errorMessage;
+    private final boolean recipientRejected;
 
-    private SendResult(ResultType type, long latencyMs, String errorCode, String errorMessage) {
+    private SendResult(ResultType type, long latencyMs, String errorCode, String errorMessage,
+                       boolean recipientRejected) {
         this.type = type;
         this.latencyMs = latencyMs;
         this.errorCode = errorCode;
         this.errorMessage = errorMessage;
+        this.recipientRejected = recipientRejected;
     }
 
     public static SendResult success(long latencyMs) {
-        return new SendResult(ResultType.SUCCESS, latencyMs, null, null);
+        return new SendResult(ResultType.SUCCESS, latencyMs, null, null, false);
     }
 
     /** Transient failure — worth retrying (network error, 5xx from provider). */
     public static SendResult failed(String errorCode, String errorMessage) {
-        return new SendResult(ResultType.TRANSIENT_FAILURE, 0, errorCode, errorMessage);
+        return new SendResult(ResultType.TRANSIENT_FAILURE, 0, errorCode, errorMessage, false);
     }
 
     /** Permanent failure — skip retries, go straight to DLQ (invalid recipient, 4xx). */
     public static SendResult permanentFailure(String errorCode, String errorMessage) {
-        return new SendResult(ResultType.PERMANENT_FAILURE, 0, errorCode, errorMessage);
+        return new SendResult(ResultType.PERMANENT_FAILURE, 0, errorCode, errorMessage, false);
+    }
+
+    /** Permanent failure because the provider rejected the recipient — suppress the address. */
+    public static SendResult recipientRejected(String errorCode, String errorMessage) {
+        return new SendResult(ResultType.PERMANENT_FAILURE, 0, errorCode, errorMessage, true);
     }
 
     public boolean isSuccess() {
@@ -3,12 +3,15 @@ package com.notifly.worker.service.sender;
 import com.twilio.Twilio;
 import com.twilio.exception.ApiException;
 import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.rest.api.v2010.account.MessageCreator;
 import com.twilio.type.PhoneNumber;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Set;
+
 /**
  * SMS sender using Twilio.
  *
@@ -21,6 +24,10 @@ import org.springframework.stereotype.Component;
  *   notifly.twilio.from-phone    → TWILIO_FROM_PHONE (e.g., +14155551234)
  *
  * Falls back to no-op mode when account-sid is blank.
+ *
+ * FIXED: Every 4xx was a permanent failure, which now skips the retry tiers.
+ * HTTP 429 / error 20429 (too many requests) and 401/403 (bad or rotated
+ * credentials) are provider-side, not about the message, so they are transient.
  */
 @Slf4j
 @Component
@@ -37,6 +44,16 @@ public class SmsSender implements ChannelSender {
      */
     private static final int MAX_SMS_LENGTH = 160;
 
+    /**
+     * Twilio error codes that reject the number itself (suppression-worthy):
+     * 21211 invalid 'To', 21610 recipient replied STOP, 21612 unreachable 'To',
+     * 21614 not a mobile number.
+     */
+    private static final Set<Integer> RECIPIENT_ERROR_CODES = Set.of(21211, 21610, 21612, 21614);
+
+    /** Twilio error 20429: too many requests. */
+    private static final int TOO_MANY_REQUESTS_CODE = 20429;
+
     @Value("${notifly.twilio.account-sid:}")
     private String accountSid;
 
@@ -65,13 +82,38 @@ public class SmsSender implements ChannelSender {
         return "SMS";
     }
 
+    /** Twilio meters per sending number. */
+    @Override
+    public String rateLimitKey() {
+        return twilioEnabled ? accountSid + ":" + fromPhone : null;
+    }
+
     @Override
     public SendResult send(String recipient, String subject, String content) {
         long startMs = System.currentTimeMillis();
 
+        SendResult rejected = precheck(recipient, content, startMs);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        try {
+            Message message = creator(recipient, content).create();
+            return classify(message, recipient, startMs);
+
+        } catch (Exception e) {
+            return classifyException(recipient, e);
+        }
+    }
+
+    /**
+     * Validation and dev-mode short-circuit.
+     * Returns null when the request should go to Twilio.
+     */
+    private SendResult precheck(String recipient, String content, long startMs) {
         if (!isValidPhoneNumber(recipient)) {
             log.warn("SmsSender: Invalid phone number: {}", recipient);
-            return SendResult.failed("INVALID_PHONE", "Invalid phone number format: " + recipient);
+            return SendResult.permanentFailure("INVALID_PHONE", "Invalid phone number format: " + recipient);
         }
 
         // No-op mode for local development
@@ -80,46 +122,61 @@ public class SmsSender implements ChannelSender {
                 content != null && content.length() > 50 ? content.substring(0, 50) + "..." : content);
             return SendResult.success(System.currentTimeMillis() - startMs);
         }
+        return null;
+    }
 
-        try {
-            // CQ-002 FIX: truncate to MAX_SMS_LENGTH (160) = 1 GSM segment = 1 billing unit.
-            // The previous value of 1600 would send up to 10 segments per message.
-            String smsBody = content != null && content.length() > MAX_SMS_LENGTH
-                    ? content.substring(0, MAX_SMS_LENGTH)
-                    : content;
-
-            Message message = Message.creator(
-                    new PhoneNumber(recipient),
-                    new PhoneNumber(fromPhone),
-                    smsBody
-            ).create();
-
-            long latencyMs = System.currentTimeMillis() - startMs;
-
-            // Check Twilio delivery status
-            if (message.getStatus() == Message.Status.FAILED || message.getStatus() == Message.Status.UNDELIVERED) {
-                String error = "Twilio delivery status: " + message.getStatus()
-                    + ", error=" + message.getErrorCode() + ": " + message.getErrorMessage();
-                log.error("SmsSender: Failed to={}, status={}", recipient, message.getStatus());
-                return SendResult.failed("TWILIO_DELIVERY_FAILED_" + message.getErrorCode(), error);
-            }
+    private MessageCreator creator(String recipient, String content) {
+        // CQ-002 FIX: truncate to MAX_SMS_LENGTH (160) = 1 GSM segment = 1 billing unit.
+        // The previous value of 1600 would send up to 10 segments per message.
+        String smsBody = content != null && content.length() > MAX_SMS_LENGTH
+                ? content.substring(0, MAX_SMS_LENGTH)
+                : content;
+
+        return Message.creator(
+                new PhoneNumber(recipient),
+                new PhoneNumber(fromPhone),
+                smsBody
+        );
+    }
 
-            log.info("SmsSender: Sent sid={}, to={}, latency={}ms",
-                    message.getSid(), recipient, latencyMs);
-            return SendResult.success(latencyMs);
+    private SendResult classify(Message message, String recipient, long startMs) {
+        long latencyMs = System.currentTimeMillis() - startMs;
 
-        } catch (ApiException e) {
+        // Check Twilio delivery status
+        if (message.getStatus() == Message.Status.FAILED || message.getStatus() == Message.Status.UNDELIVERED) {
+            String error = "Twilio delivery status: " + message.getStatus()
+                + ", error=" + message.getErrorCode() + ": " + message.getErrorMessage();
+            log.error("SmsSender: Failed to={}, status={}", recipient, message.getStatus());
+            return SendResult.failed("TWILIO_DELIVERY_FAILED_" + message.getErrorCode(), error);
+        }
+
+        log.info("SmsSender: Sent sid={}, to={}, latency={}ms",
+                message.getSid(), recipient, latencyMs);
+        return SendResult.success(latencyMs);
+    }
+
+    private SendResult classifyException(String recipient, Throwable e) {
+        if (e instanceof ApiException apiException) {
             log.error("SmsSender: Twilio API error to={}: code={}, msg={}",
-                    recipient, e.getCode(), e.getMessage());
-            // 4xx = permanent (invalid number, unsubscribed, etc.)
-            if (e.getStatusCode() >= 400 && e.getStatusCode() < 500) {
-                return SendResult.permanentFailure("TWILIO_CLIENT_ERROR_" + e.getCode(), e.getMessage());
+                    recipient, apiException.getCode(), apiException.getMessage());
+            int status = apiException.getStatusCode();
+            if (status == 429 || Integer.valueOf(TOO_MANY_REQUESTS_CODE).equals(apiException.getCode())) {
+                return SendResult.failed("TWILIO_RATE_LIMITED", apiException.getMessage());
             }
-            return SendResult.failed("TWILIO_SERVER_ERROR_" + e.getCode(), e.getMessage());
-        } catch (Exception e) {
-            log.error("SmsSender: Unexpected error sending to={}: {}", recipient, e.getMessage(), e);
-            return SendResult.failed("SMS_UNEXPECTED_ERROR", e.getMessage());
+            if (status == 401 || status == 403) {
+                return SendResult.failed("TWILIO_AUTH_ERROR_" + status, apiException.getMessage());
+            }
+            // Other 4xx = permanent (invalid number, unsubscribed, etc.)
+            if (apiException.getStatusCode() >= 400 && apiException.getStatusCode() < 500) {
+                String code = "TWILIO_CLIENT_ERROR_" + apiException.getCode();
+                return apiException.getCode() != null && RECIPIENT_ERROR_CODES.contains(apiException.getCode())
+                        ? SendResult.recipientRejected(code, apiException.getMessage())
+                        : SendResult.permanentFailure(code, apiException.getMessage());
+            }
+            return SendResult.failed("TWILIO_SERVER_ERROR_" + apiException.getCode(), apiException.getMessage());
         }
+        log.error("SmsSender: Unexpected error sending to={}: {}", recipient, e.getMessage(), e);
+        return SendResult.failed("SMS_UNEXPECTED_ERROR", e.getMessage());
     }
 
     private boolean isValidPhoneNumber(String phone) {
@@ -0,0 +1,136 @@
+package com.notifly.worker.service.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template parsed once into literal segments and variable slots.
+ *
+ * Syntax:
+ *   {{name}}    → payload value, HTML-escaped when rendering with escaping on
+ *   {{{name}}}  → payload value, never escaped (trusted HTML fragments)
+ * Whitespace inside the braces is ignored ("{{ name }}"). An unterminated
+ * "{{" is kept as literal text.
+ *
+ * Layout: literals[0] slot[0] literals[1] slot[1] ... literals[n]. Rendering
+ * is a single pass appending into one StringBuilder pre-sized from the literal
+ * length, instead of one String.replace (full rescan + copy) per payload entry.
+ *
+ * Instances are immutable and shared across threads.
+ */
+public final class CompiledTemplate {
+
+    private static final int ESTIMATED_VALUE_LENGTH = 16;
+
+    private final String[] literals;
+    private final String[] slotNames;
+    private final String[] placeholders;
+    private final boolean[] rawSlots;
+    private final int literalLength;
+    private final boolean html;
+
+    private CompiledTemplate(String source, List<String> literals, List<String> slotNames,
+                             List<String> placeholders, List<Boolean> rawSlots) {
+        this.literals = literals.toArray(String[]::new);
+        this.slotNames = slotNames.toArray(String[]::new);
+        this.placeholders = placeholders.toArray(String[]::new);
+        this.rawSlots = new boolean[rawSlots.size()];
+        for (int i = 0; i < rawSlots.size(); i++) {
+            this.rawSlots[i] = rawSlots.get(i);
+        }
+        this.literalLength = literals.stream().mapToInt(String::length).sum();
+        this.html = source.contains("<html") || source.contains("<body") || source.contains("<p>");
+    }
+
+    public static CompiledTemplate compile(String source) {
+        String text = source != null ? source : "";
+        List<String> literals = new ArrayList<>();
+        List<String> slotNames = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        List<Boolean> rawSlots = new ArrayList<>();
+
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while (true) {
+            int open = text.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            boolean raw = text.startsWith("{{{", open);
+            String closeToken = raw ? "}}}" : "}}";
+            int nameStart = open + (raw ? 3 : 2);
+            int close = text.indexOf(closeToken, nameStart);
+            if (close < 0) {
+                break; // Unterminated — the remainder is literal text
+            }
+
+            int end = close + closeToken.length();
+            String name = text.substring(nameStart, close).trim();
+            if (name.isEmpty()) {
+                literal.append(text, pos, end); // "{{}}" is not a slot
+            } else {
+                literal.append(text, pos, open);
+                literals.add(literal.toString());
+                literal.setLength(0);
+                slotNames.add(name);
+                placeholders.add(text.substring(open, end));
+                rawSlots.add(raw);
+            }
+            pos = end;
+        }
+        literal.append(text, pos, text.length());
+        literals.add(literal.toString());
+
+        return new CompiledTemplate(text, literals, slotNames, placeholders, rawSlots);
+    }
+
+    public String render(Map<String, Object> payload, boolean escapeHtml, MissingVariablePolicy missingPolicy) {
+        if (slotNames.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder out = new StringBuilder(literalLength + slotNames.length * ESTIMATED_VALUE_LENGTH);
+        for (int i = 0; i < slotNames.length; i++) {
+            out.append(literals[i]);
+
+            if (payload != null && payload.containsKey(slotNames[i])) {
+                Object value = payload.get(slotNames[i]);
+                String text = value != null ? String.valueOf(value) : "";
+                if (escapeHtml && !rawSlots[i]) {
+                    appendHtmlEscaped(out, text);
+                } else {
+                    out.append(text);
+                }
+            } else {
+                switch (missingPolicy) {
+                    case KEEP_PLACEHOLDER -> out.append(placeholders[i]);
+                    case EMPTY -> { }
+                    case FAIL -> throw new TemplateRenderException(
+                            "Missing template variable: " + slotNames[i]);
+                }
+            }
+        }
+        out.append(literals[slotNames.length]);
+        return out.toString();
+    }
+
+    /** Same heuristic EmailSender uses to pick text/html over text/plain. */
+    public boolean isHtml() {
+        return html;
+    }
+
+    private static void appendHtmlEscaped(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
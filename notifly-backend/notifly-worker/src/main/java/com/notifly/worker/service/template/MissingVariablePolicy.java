@@ -0,0 +1,13 @@
+package com.notifly.worker.service.template;
+
+/**
+ * What to render for a {{variable}} that is not present in the event payload.
+ */
+public enum MissingVariablePolicy {
+    /** Leave the placeholder text ("{{name}}") in the output — the historical behaviour. */
+    KEEP_PLACEHOLDER,
+    /** Render nothing for the slot. */
+    EMPTY,
+    /** Fail the render; the channel attempt is recorded as failed. */
+    FAIL
+}
@@ -0,0 +1,12 @@
+package com.notifly.worker.service.template;
+
+/**
+ * Thrown when a template cannot be rendered, e.g. a required variable is
+ * missing under {@link MissingVariablePolicy#FAIL}.
+ */
+public class TemplateRenderException extends RuntimeException {
+
+    public TemplateRenderException(String message) {
+        super(message);
+    }
+}
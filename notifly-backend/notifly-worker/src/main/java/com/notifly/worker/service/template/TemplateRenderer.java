@@ -0,0 +1,70 @@
+package com.notifly.worker.service.template;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.notifly.worker.metrics.NotificationMetrics;
+import com.notifly.worker.service.DeliveryConfigCache.TemplateSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Renders templates through a cache of {@link CompiledTemplate}s.
+ *
+ * The cache holds compiled template source, never rendered output, so one
+ * entry serves every recipient and payload. Entries are keyed by
+ * (tenant, template id, version, channel, revision). AdminController.updateTemplate
+ * edits content in place without bumping the version, so the revision
+ * (updatedAt) is part of the key: once DeliveryConfigCache hands out the
+ * updated snapshot, the next render compiles it under a new key and the old
+ * entry simply ages out of the LRU. Nothing waits for a TTL.
+ *
+ * Escaping: payload values are HTML-escaped when an EMAIL template is HTML
+ * (notifly.worker.template.html-escape, default on). {{{name}}} opts a slot out.
+ */
+@Slf4j
+@Component
+public class TemplateRenderer {
+
+    private record CompiledKey(UUID tenantId, UUID templateId, int version, String channel, long revision) {
+
+        static CompiledKey of(TemplateSnapshot template) {
+            // updatedAt is set on insert and every update; fall back to the
+            // content hash for rows written before the column existed
+            long revision = template.updatedAt() != null
+                    ? template.updatedAt().toEpochMilli()
+                    : template.content() != null ? template.content().hashCode() : 0;
+            return new CompiledKey(template.tenantId(), template.id(), template.version(),
+                    template.channel(), revision);
+        }
+    }
+
+    private final Cache<CompiledKey, CompiledTemplate> compiled;
+    private final MissingVariablePolicy missingVariablePolicy;
+    private final boolean htmlEscape;
+
+    public TemplateRenderer(
+            @Value("${notifly.worker.template.missing-variable:KEEP_PLACEHOLDER}") MissingVariablePolicy missingVariablePolicy,
+            @Value("${notifly.worker.template.html-escape:true}") boolean htmlEscape,
+            @Value("${notifly.worker.template.compiled-cache-size:5000}") long cacheSize,
+            NotificationMetrics metrics) {
+        this.missingVariablePolicy = missingVariablePolicy;
+        this.htmlEscape = htmlEscape;
+        this.compiled = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        metrics.monitorCache("compiled_template", compiled);
+    }
+
+    public String render(TemplateSnapshot template, Map<String, Object> payload) {
+        CompiledTemplate compiledTemplate = compiled.get(CompiledKey.of(template),
+                k -> CompiledTemplate.compile(template.content()));
+
+        boolean escape = htmlEscape && "EMAIL".equals(template.channel()) && compiledTemplate.isHtml();
+        return compiledTemplate.render(payload, escape, missingVariablePolicy);
+    }
+}